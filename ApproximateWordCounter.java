@@ -0,0 +1,99 @@
+import java.nio.charset.StandardCharsets;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Approximate word counter in fixed memory, for inputs whose vocabulary is too
+ * large to count exactly. Every word is counted in a {@code CountMinSketch},
+ * and the {@code capacity} words with the highest estimates so far are kept as
+ * candidates for the top words, in a min-heap on estimate. A word that is
+ * neither a candidate nor estimated above the weakest candidate costs no
+ * allocation at all.
+ *
+ * <p>
+ * Candidates are found by a 64-bit fingerprint of their bytes, the same hash
+ * that places them in the sketch (see {@code CandidateHeap}).
+ *
+ * @author Julia Pittner
+ */
+public final class ApproximateWordCounter implements Utf8WordSink {
+
+    /**
+     * The sketch all words are counted in.
+     */
+    private final CountMinSketch sketch;
+
+    /**
+     * The candidates, on their estimates when last seen.
+     */
+    private final CandidateHeap candidates;
+
+    /**
+     * Creates an empty counter with the given sketch error and at most
+     * {@code capacity} candidates.
+     *
+     * @param epsilon
+     *            the error factor of the sketch
+     * @param delta
+     *            the failure probability of the sketch
+     * @param capacity
+     *            the number of candidates kept
+     * @requires 0 < epsilon < 1 and 0 < delta < 1 and capacity > 0
+     */
+    public ApproximateWordCounter(double epsilon, double delta,
+            int capacity) {
+        assert capacity > 0 : "Violation of: capacity > 0";
+        this.sketch = new CountMinSketch(epsilon, delta);
+        this.candidates = new CandidateHeap(capacity);
+    }
+
+    @Override
+    public void addWord(byte[] word, int length) {
+        long fingerprint = CandidateHeap.fingerprint(word, length);
+        int estimate = this.sketch.add(fingerprint, 1);
+        int position = this.candidates.position(fingerprint);
+        if (position >= 0) {
+            this.candidates.raiseCount(position, estimate);
+        } else if (this.candidates.size() < this.candidates.capacity()) {
+            this.candidates.insert(fingerprint, word, length, estimate, 0);
+        } else if (estimate > this.candidates.minCount()) {
+            this.candidates.replaceMin(fingerprint, word, length, estimate,
+                    0);
+        }
+    }
+
+    /**
+     * Returns the sketch all words are counted in.
+     *
+     * @return the sketch
+     */
+    public CountMinSketch sketch() {
+        return this.sketch;
+    }
+
+    /**
+     * Returns the number of candidates.
+     *
+     * @return the number of candidates
+     */
+    public int size() {
+        return this.candidates.size();
+    }
+
+    /**
+     * Passes every candidate, decoded from UTF-8, and its final estimated
+     * count to {@code action}, in no particular order.
+     *
+     * @param action
+     *            the receiver of the words and estimates
+     */
+    public void forEach(ObjIntConsumer<String> action) {
+        assert action != null : "Violation of: action is not null";
+        for (int i = 0; i < this.candidates.size(); i++) {
+            action.accept(
+                    new String(this.candidates.wordAt(i),
+                            StandardCharsets.UTF_8),
+                    this.sketch.estimate(this.candidates.fingerprintAt(i)));
+        }
+    }
+
+}
@@ -0,0 +1,131 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Feeds a file to a {@code Utf8Tokenizer} with read-ahead: while one buffer is
+ * being tokenized, the reads of the next {@code depth - 1} buffers are already
+ * in flight on an {@code AsynchronousFileChannel}, so the tokenizer does not
+ * wait for the disk as long as it is slower than the reads.
+ *
+ * @author Julia Pittner
+ */
+public final class AsyncFileInput {
+
+    /**
+     * Default size of each buffer in bytes.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Default number of buffers, that is reads in flight plus the buffer
+     * being tokenized.
+     */
+    public static final int DEFAULT_DEPTH = 2;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private AsyncFileInput() {
+    }
+
+    /**
+     * Waits for {@code read} to finish and returns the number of bytes read.
+     *
+     * @param read
+     *            the pending read
+     * @return the number of bytes read, or -1 at end of file
+     * @throws IOException
+     *             if the read failed or the wait was interrupted
+     */
+    private static int await(Future<Integer> read) throws IOException {
+        int result;
+        try {
+            result = read.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading", e);
+        }
+        return result;
+    }
+
+    /**
+     * Feeds all of {@code channel} to {@code tokenizer} and finishes it,
+     * keeping up to {@code depth - 1} reads of {@code bufferSize} bytes in
+     * flight while a buffer is tokenized.
+     *
+     * @param channel
+     *            the file to read
+     * @param tokenizer
+     *            the receiver of the bytes
+     * @param bufferSize
+     *            the size of each buffer in bytes
+     * @param depth
+     *            the number of buffers
+     * @throws IOException
+     *             if reading fails
+     * @requires bufferSize > 0 and depth > 0
+     */
+    public static void feedAll(AsynchronousFileChannel channel,
+            Utf8Tokenizer tokenizer, int bufferSize, int depth)
+            throws IOException {
+        assert channel != null : "Violation of: channel is not null";
+        assert tokenizer != null : "Violation of: tokenizer is not null";
+        assert bufferSize > 0 : "Violation of: bufferSize > 0";
+        assert depth > 0 : "Violation of: depth > 0";
+
+        long size = channel.size();
+        ByteBuffer[] buffers = new ByteBuffer[depth];
+        List<Future<Integer>> reads = new ArrayList<>();
+        long[] positions = new long[depth];
+        long next = 0;
+        for (int i = 0; i < depth; i++) {
+            buffers[i] = ByteBuffer.allocate(bufferSize);
+            reads.add(null);
+            if (next < size) {
+                positions[i] = next;
+                reads.set(i, channel.read(buffers[i], next));
+                next += bufferSize;
+            }
+        }
+
+        /*
+         * Buffers are handed to the tokenizer in file order, round robin.
+         */
+        int current = 0;
+        while (reads.get(current) != null) {
+            ByteBuffer buffer = buffers[current];
+            int read = await(reads.get(current));
+            long end = Math.min(size, positions[current] + bufferSize);
+            while (read >= 0 && buffer.hasRemaining()
+                    && positions[current] + buffer.position() < end) {
+                /*
+                 * A short read: fetch the rest before handing it over.
+                 */
+                read = await(channel.read(buffer,
+                        positions[current] + buffer.position()));
+            }
+            buffer.flip();
+            tokenizer.feed(buffer);
+            buffer.clear();
+            reads.set(current, null);
+            if (next < size) {
+                positions[current] = next;
+                reads.set(current, channel.read(buffer, next));
+                next += bufferSize;
+            }
+            current = (current + 1) % depth;
+        }
+        tokenizer.finish();
+    }
+
+}
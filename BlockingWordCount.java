@@ -0,0 +1,185 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Counts the words of many UTF-8 files when reading them is slow because of
+ * latency rather than CPU, as on a network mount. Every file gets a thread of
+ * its own that reads it with plain blocking reads, so many reads wait on the
+ * storage at the same time; a semaphore caps how many files are open at once.
+ * Each thread counts its file into a counter of its own and merges it into
+ * the shared result when done.
+ *
+ * <p>
+ * The threads are virtual threads when the runtime has them, and otherwise a
+ * fixed pool of as many ordinary threads as files may be open at once. In
+ * either case a file's task is only submitted once it holds a permit, so no
+ * more than that many threads or per-file counters exist at a time.
+ *
+ * @author Julia Pittner
+ */
+public final class BlockingWordCount {
+
+    /**
+     * Default limit on the number of files open at once.
+     */
+    public static final int DEFAULT_MAX_OPEN = 64;
+
+    /**
+     * Size of the buffer each thread reads into; small, since many threads
+     * read at once.
+     */
+    private static final int BUFFER_SIZE = 1 << 13;
+
+    /**
+     * Opens a file for reading.
+     */
+    @FunctionalInterface
+    public interface FileOpener {
+
+        /**
+         * Opens {@code file} for reading.
+         *
+         * @param file
+         *            the file
+         * @return a stream over the bytes of the file
+         * @throws IOException
+         *             if the file cannot be opened
+         */
+        InputStream open(Path file) throws IOException;
+
+    }
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private BlockingWordCount() {
+    }
+
+    /**
+     * Returns an executor that starts a virtual thread for every task if the
+     * runtime supports them, and otherwise runs the tasks on a fixed pool of
+     * {@code threads} platform threads.
+     *
+     * @param threads
+     *            the number of platform threads without virtual threads
+     * @return the executor
+     * @requires threads > 0
+     */
+    static ExecutorService newThreadPerTaskExecutor(int threads) {
+        ExecutorService executor;
+        try {
+            Method factory = Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor");
+            executor = (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            executor = Executors.newFixedThreadPool(threads, r -> {
+                Thread thread = new Thread(r);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Returns a {@code FileOpener} that opens files from the file system, and
+     * waits {@code delayMillis} before every read to simulate slow storage.
+     *
+     * @param delayMillis
+     *            the delay before each read, in milliseconds
+     * @return the opener
+     * @requires delayMillis >= 0
+     */
+    public static FileOpener withLatency(long delayMillis) {
+        assert delayMillis >= 0 : "Violation of: delayMillis >= 0";
+        FileOpener opener = Files::newInputStream;
+        if (delayMillis > 0) {
+            opener = file -> new LatencyInputStream(Files.newInputStream(file),
+                    delayMillis);
+        }
+        return opener;
+    }
+
+    /**
+     * Counts the words of all {@code files}, each on a thread of its own, with
+     * at most {@code maxOpen} files open at once.
+     *
+     * @param files
+     *            the UTF-8 files
+     * @param opener
+     *            how to open a file
+     * @param separators
+     *            the classifier for separator characters; must be ASCII
+     * @param lowerCase
+     *            whether to lowercase words
+     * @param maxOpen
+     *            the limit on files open at once
+     * @return the words of all files and their total counts
+     * @throws IOException
+     *             if reading any file fails
+     * @requires maxOpen > 0
+     */
+    public static Utf8WordCounter count(List<Path> files, FileOpener opener,
+            SeparatorClassifier separators, boolean lowerCase, int maxOpen)
+            throws IOException {
+        assert files != null : "Violation of: files is not null";
+        assert opener != null : "Violation of: opener is not null";
+        assert separators != null : "Violation of: separators is not null";
+        assert maxOpen > 0 : "Violation of: maxOpen > 0";
+
+        Utf8WordCounter result = new Utf8WordCounter();
+        Semaphore open = new Semaphore(maxOpen);
+        List<Future<?>> tasks = new ArrayList<>();
+        ExecutorService executor = newThreadPerTaskExecutor(maxOpen);
+        try {
+            for (Path file : files) {
+                /*
+                 * Take the permit before submitting, so a file's thread and
+                 * counter only come into being once it may be read.
+                 */
+                open.acquireUninterruptibly();
+                boolean submitted = false;
+                try {
+                    tasks.add(executor.submit(() -> {
+                        try {
+                            Utf8WordCounter counter = new Utf8WordCounter();
+                            Utf8Tokenizer tokenizer = new Utf8Tokenizer(
+                                    separators, lowerCase, counter);
+                            try (InputStream in = opener.open(file)) {
+                                tokenizer.readFrom(in, BUFFER_SIZE);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(
+                                        file.toString(), e);
+                            }
+                            synchronized (result) {
+                                result.addAll(counter);
+                            }
+                        } finally {
+                            open.release();
+                        }
+                    }));
+                    submitted = true;
+                } finally {
+                    if (!submitted) {
+                        open.release();
+                    }
+                }
+            }
+            CorpusWordCount.waitFor(tasks);
+        } finally {
+            executor.shutdownNow();
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,398 @@
+import java.util.Arrays;
+
+/**
+ * Fixed-capacity min-heap of candidate words on their counts, for the
+ * streaming top-word counters. Each entry holds a word's UTF-8 bytes, its
+ * 64-bit fingerprint, a count and an error. Entries are found by fingerprint
+ * through an open-addressing index, so looking a word up allocates nothing.
+ * Counts may only grow while an entry is in the heap.
+ *
+ * @author Julia Pittner
+ */
+final class CandidateHeap {
+
+    /**
+     * Fingerprint of an empty index slot.
+     */
+    private static final long EMPTY = 0;
+
+    /**
+     * Fingerprints of the entries, in heap order.
+     */
+    private final long[] fingerprints;
+
+    /**
+     * The count of each entry; the heap is ordered on these.
+     */
+    private final int[] counts;
+
+    /**
+     * The error of each entry.
+     */
+    private final int[] errors;
+
+    /**
+     * The UTF-8 bytes of each entry's word.
+     */
+    private final byte[][] words;
+
+    /**
+     * Number of entries.
+     */
+    private int size;
+
+    /**
+     * Index from fingerprint to heap position: fingerprint of each slot, or
+     * {@code EMPTY}. The length is a power of two at least twice the capacity.
+     */
+    private final long[] indexKeys;
+
+    /**
+     * The heap position of the fingerprint in each slot of
+     * {@code indexKeys}.
+     */
+    private final int[] indexPositions;
+
+    /**
+     * Creates an empty heap with room for {@code capacity} entries.
+     *
+     * @param capacity
+     *            the largest number of entries
+     * @requires capacity > 0
+     */
+    CandidateHeap(int capacity) {
+        assert capacity > 0 : "Violation of: capacity > 0";
+        this.fingerprints = new long[capacity];
+        this.counts = new int[capacity];
+        this.errors = new int[capacity];
+        this.words = new byte[capacity][];
+        int slots = Integer.highestOneBit(capacity * 2 - 1) * 2;
+        this.indexKeys = new long[slots];
+        this.indexPositions = new int[slots];
+    }
+
+    /**
+     * Returns a 64-bit fingerprint of {@code word[0, length)}, never
+     * {@code EMPTY}.
+     *
+     * @param word
+     *            the buffer holding the word
+     * @param length
+     *            the length of the word
+     * @return the fingerprint
+     */
+    static long fingerprint(byte[] word, int length) {
+        final long prime = 0x100000001B3L;
+        final long mix1 = 0xFF51AFD7ED558CCDL;
+        final long mix2 = 0xC4CEB9FE1A85EC53L;
+        final int shift = 33;
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0; i < length; i++) {
+            h = (h ^ word[i]) * prime;
+        }
+        h ^= h >>> shift;
+        h *= mix1;
+        h ^= h >>> shift;
+        h *= mix2;
+        h ^= h >>> shift;
+        if (h == EMPTY) {
+            h = 1;
+        }
+        return h;
+    }
+
+    /**
+     * Returns the index slot holding {@code fingerprint}, or the empty slot
+     * where it would go.
+     *
+     * @param fingerprint
+     *            the fingerprint
+     * @return the slot
+     */
+    private int slotOf(long fingerprint) {
+        int mask = this.indexKeys.length - 1;
+        int slot = (int) fingerprint & mask;
+        while (this.indexKeys[slot] != EMPTY
+                && this.indexKeys[slot] != fingerprint) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Removes {@code fingerprint} from the index, shifting back the entries
+     * after it so that no probe sequence is broken.
+     *
+     * @param fingerprint
+     *            the fingerprint, which is in the index
+     */
+    private void unindex(long fingerprint) {
+        int mask = this.indexKeys.length - 1;
+        int hole = this.slotOf(fingerprint);
+        int slot = (hole + 1) & mask;
+        while (this.indexKeys[slot] != EMPTY) {
+            int home = (int) this.indexKeys[slot] & mask;
+            if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+                this.indexKeys[hole] = this.indexKeys[slot];
+                this.indexPositions[hole] = this.indexPositions[slot];
+                hole = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        this.indexKeys[hole] = EMPTY;
+    }
+
+    /**
+     * Swaps heap entries {@code i} and {@code j}, updating the index.
+     *
+     * @param i
+     *            a heap position
+     * @param j
+     *            a heap position
+     */
+    private void swap(int i, int j) {
+        long fingerprint = this.fingerprints[i];
+        int count = this.counts[i];
+        int error = this.errors[i];
+        byte[] word = this.words[i];
+        this.fingerprints[i] = this.fingerprints[j];
+        this.counts[i] = this.counts[j];
+        this.errors[i] = this.errors[j];
+        this.words[i] = this.words[j];
+        this.fingerprints[j] = fingerprint;
+        this.counts[j] = count;
+        this.errors[j] = error;
+        this.words[j] = word;
+        this.indexPositions[this.slotOf(this.fingerprints[i])] = i;
+        this.indexPositions[this.slotOf(fingerprint)] = j;
+    }
+
+    /**
+     * Restores the heap order by moving entry {@code i} down.
+     *
+     * @param i
+     *            a heap position
+     */
+    private void siftDown(int i) {
+        int parent = i;
+        int child = 2 * parent + 1;
+        boolean done = false;
+        while (!done && child < this.size) {
+            if (child + 1 < this.size
+                    && this.counts[child + 1] < this.counts[child]) {
+                child++;
+            }
+            if (this.counts[child] < this.counts[parent]) {
+                this.swap(child, parent);
+                parent = child;
+                child = 2 * parent + 1;
+            } else {
+                done = true;
+            }
+        }
+    }
+
+    /**
+     * Restores the heap order by moving entry {@code i} up.
+     *
+     * @param i
+     *            a heap position
+     */
+    private void siftUp(int i) {
+        int child = i;
+        while (child > 0
+                && this.counts[child] < this.counts[(child - 1) / 2]) {
+            this.swap(child, (child - 1) / 2);
+            child = (child - 1) / 2;
+        }
+    }
+
+    /**
+     * Stores an entry at heap position {@code position} and indexes it.
+     *
+     * @param position
+     *            the heap position
+     * @param fingerprint
+     *            the fingerprint of the word
+     * @param word
+     *            the buffer holding the word
+     * @param length
+     *            the length of the word
+     * @param count
+     *            the count
+     * @param error
+     *            the error
+     */
+    private void store(int position, long fingerprint, byte[] word,
+            int length, int count, int error) {
+        int slot = this.slotOf(fingerprint);
+        this.indexKeys[slot] = fingerprint;
+        this.indexPositions[slot] = position;
+        this.fingerprints[position] = fingerprint;
+        this.counts[position] = count;
+        this.errors[position] = error;
+        this.words[position] = Arrays.copyOf(word, length);
+    }
+
+    /**
+     * Returns the heap position of the entry with {@code fingerprint}, or -1
+     * if there is none.
+     *
+     * @param fingerprint
+     *            the fingerprint
+     * @return the position, or -1
+     */
+    int position(long fingerprint) {
+        int slot = this.slotOf(fingerprint);
+        int result = -1;
+        if (this.indexKeys[slot] != EMPTY) {
+            result = this.indexPositions[slot];
+        }
+        return result;
+    }
+
+    /**
+     * Adds an entry for {@code word[0, length)}.
+     *
+     * @param fingerprint
+     *            the fingerprint of the word
+     * @param word
+     *            the buffer holding the word
+     * @param length
+     *            the length of the word
+     * @param count
+     *            the count
+     * @param error
+     *            the error
+     * @requires size() < capacity() and the word is not in this
+     */
+    void insert(long fingerprint, byte[] word, int length, int count,
+            int error) {
+        assert this.size < this.capacity() : "Violation of: this is not full";
+        this.store(this.size, fingerprint, word, length, count, error);
+        this.size++;
+        this.siftUp(this.size - 1);
+    }
+
+    /**
+     * Replaces the entry with the smallest count by one for
+     * {@code word[0, length)}.
+     *
+     * @param fingerprint
+     *            the fingerprint of the word
+     * @param word
+     *            the buffer holding the word
+     * @param length
+     *            the length of the word
+     * @param count
+     *            the count, at least the smallest count
+     * @param error
+     *            the error
+     * @requires size() > 0 and the word is not in this
+     */
+    void replaceMin(long fingerprint, byte[] word, int length, int count,
+            int error) {
+        assert this.size > 0 : "Violation of: this is not empty";
+        this.unindex(this.fingerprints[0]);
+        this.store(0, fingerprint, word, length, count, error);
+        this.siftDown(0);
+    }
+
+    /**
+     * Raises the count of the entry at {@code position} to {@code count}.
+     *
+     * @param position
+     *            the heap position
+     * @param count
+     *            the new count, at least the current one
+     */
+    void raiseCount(int position, int count) {
+        assert count >= this.counts[position]
+                : "Violation of: count does not decrease";
+        this.counts[position] = count;
+        this.siftDown(position);
+    }
+
+    /**
+     * Removes every entry.
+     */
+    void clear() {
+        Arrays.fill(this.indexKeys, EMPTY);
+        Arrays.fill(this.words, null);
+        this.size = 0;
+    }
+
+    /**
+     * Returns the number of entries.
+     *
+     * @return the number of entries
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the largest number of entries.
+     *
+     * @return the capacity
+     */
+    int capacity() {
+        return this.fingerprints.length;
+    }
+
+    /**
+     * Returns the smallest count.
+     *
+     * @return the smallest count
+     * @requires size() > 0
+     */
+    int minCount() {
+        return this.counts[0];
+    }
+
+    /**
+     * Returns the fingerprint of the entry at {@code position}.
+     *
+     * @param position
+     *            the heap position
+     * @return the fingerprint
+     */
+    long fingerprintAt(int position) {
+        return this.fingerprints[position];
+    }
+
+    /**
+     * Returns the word bytes of the entry at {@code position}; the array must
+     * not be changed.
+     *
+     * @param position
+     *            the heap position
+     * @return the UTF-8 bytes of the word
+     */
+    byte[] wordAt(int position) {
+        return this.words[position];
+    }
+
+    /**
+     * Returns the count of the entry at {@code position}.
+     *
+     * @param position
+     *            the heap position
+     * @return the count
+     */
+    int countAt(int position) {
+        return this.counts[position];
+    }
+
+    /**
+     * Returns the error of the entry at {@code position}.
+     *
+     * @param position
+     *            the heap position
+     * @return the error
+     */
+    int errorAt(int position) {
+        return this.errors[position];
+    }
+
+}
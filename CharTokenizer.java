@@ -0,0 +1,243 @@
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Streaming word tokenizer over a {@code Reader}. Characters are read in
+ * chunks into one reusable {@code char[]}, and a word that straddles the end
+ * of a chunk is carried over to the next one, so memory stays constant no
+ * matter how long the lines of the input are. The buffer only grows when a
+ * single word is longer than it.
+ *
+ * <p>
+ * A word is a maximal run of characters that are not separators, exactly as
+ * returned by {@code nextWordOrSeparator}. Line terminators are only word
+ * boundaries if they are separators, so callers that used to tokenize line
+ * by line must include {@code '\n'} and {@code '\r'} in the classifier.
+ *
+ * @author Julia Pittner
+ */
+public final class CharTokenizer implements AutoCloseable {
+
+    /**
+     * Default number of characters read per chunk.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The source of characters.
+     */
+    private final Reader in;
+
+    /**
+     * The classifier for separator characters.
+     */
+    private final SeparatorClassifier separators;
+
+    /**
+     * The chunk buffer; the current word is {@code buffer[start, end)}.
+     */
+    private char[] buffer;
+
+    /**
+     * Start of the current word in {@code buffer}.
+     */
+    private int start;
+
+    /**
+     * End (exclusive) of the current word in {@code buffer}.
+     */
+    private int end;
+
+    /**
+     * Next unread position in {@code buffer}.
+     */
+    private int position;
+
+    /**
+     * Number of valid characters in {@code buffer}.
+     */
+    private int limit;
+
+    /**
+     * Whether {@code in} has reported end of stream.
+     */
+    private boolean atEOS;
+
+    /**
+     * Creates a tokenizer with the default buffer size.
+     *
+     * @param in
+     *            the source of characters
+     * @param separators
+     *            the classifier for separator characters
+     */
+    public CharTokenizer(Reader in, SeparatorClassifier separators) {
+        this(in, separators, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a tokenizer that reads {@code bufferSize} characters at a time.
+     *
+     * @param in
+     *            the source of characters
+     * @param separators
+     *            the classifier for separator characters
+     * @param bufferSize
+     *            the initial size of the chunk buffer
+     * @requires bufferSize > 0
+     */
+    public CharTokenizer(Reader in, SeparatorClassifier separators,
+            int bufferSize) {
+        assert in != null : "Violation of: in is not null";
+        assert separators != null : "Violation of: separators is not null";
+        assert bufferSize > 0 : "Violation of: bufferSize > 0";
+        this.in = in;
+        this.separators = separators;
+        this.buffer = new char[bufferSize];
+    }
+
+    /**
+     * Refills {@code buffer} after its first {@code keep} characters have
+     * been moved to the front, growing it if the kept characters fill it.
+     *
+     * @param keep
+     *            the number of characters at {@code buffer[start, limit)} to
+     *            keep
+     * @return true iff at least one new character was read
+     * @throws IOException
+     *             if reading fails
+     */
+    private boolean refill(int keep) throws IOException {
+        if (keep == this.buffer.length) {
+            char[] larger = new char[this.buffer.length * 2];
+            System.arraycopy(this.buffer, this.start, larger, 0, keep);
+            this.buffer = larger;
+        } else if (keep > 0) {
+            System.arraycopy(this.buffer, this.start, this.buffer, 0, keep);
+        }
+        this.start = 0;
+        this.position = keep;
+        this.limit = keep;
+        int read = 0;
+        while (!this.atEOS && read == 0) {
+            read = this.in.read(this.buffer, keep, this.buffer.length - keep);
+            if (read < 0) {
+                this.atEOS = true;
+            } else {
+                this.limit += read;
+            }
+        }
+        return read > 0;
+    }
+
+    /**
+     * Advances to the next word in the input.
+     *
+     * @return true iff there is a next word; its characters are then
+     *         {@code wordBuffer()[wordStart(), wordEnd())}
+     * @throws IOException
+     *             if reading fails
+     */
+    public boolean nextWord() throws IOException {
+        boolean inWord = false;
+        boolean done = false;
+        while (!done) {
+            int keep = 0;
+            if (inWord) {
+                keep = this.limit - this.start;
+            }
+            if (this.position == this.limit && !this.refill(keep)) {
+                /*
+                 * End of input: a word in progress ends here.
+                 */
+                this.end = this.position;
+                done = true;
+            } else {
+                char c = this.buffer[this.position];
+                if (this.separators.isSeparator(c)) {
+                    if (inWord) {
+                        this.end = this.position;
+                        done = true;
+                    }
+                } else if (!inWord) {
+                    inWord = true;
+                    this.start = this.position;
+                }
+                this.position++;
+            }
+        }
+        return inWord;
+    }
+
+    /**
+     * Returns the buffer holding the current word. The buffer is reused and
+     * its contents change on the next call to {@code nextWord}.
+     *
+     * @return the buffer holding the current word
+     */
+    public char[] wordBuffer() {
+        return this.buffer;
+    }
+
+    /**
+     * Returns the start of the current word in {@code wordBuffer()}.
+     *
+     * @return the start of the current word
+     */
+    public int wordStart() {
+        return this.start;
+    }
+
+    /**
+     * Returns the end (exclusive) of the current word in {@code wordBuffer()}.
+     *
+     * @return the end of the current word
+     */
+    public int wordEnd() {
+        return this.end;
+    }
+
+    /**
+     * Lowercases the current word in place if it is all ASCII. Other words
+     * are left alone, since only {@code String.toLowerCase} folds them
+     * correctly.
+     *
+     * @return true iff the current word was all ASCII and is now lowercase
+     */
+    public boolean lowerCaseAscii() {
+        final char firstNonAscii = 0x80;
+        final int caseBit = 0x20;
+        boolean ascii = true;
+        for (int i = this.start; ascii && i < this.end; i++) {
+            ascii = this.buffer[i] < firstNonAscii;
+        }
+        for (int i = this.start; ascii && i < this.end; i++) {
+            char c = this.buffer[i];
+            if (c >= 'A' && c <= 'Z') {
+                this.buffer[i] = (char) (c | caseBit);
+            }
+        }
+        return ascii;
+    }
+
+    /**
+     * Returns the current word as a new {@code String}.
+     *
+     * @return the current word
+     */
+    public String word() {
+        return new String(this.buffer, this.start, this.end - this.start);
+    }
+
+    /**
+     * Closes the underlying {@code Reader}.
+     *
+     * @throws IOException
+     *             if closing fails
+     */
+    @Override
+    public void close() throws IOException {
+        this.in.close();
+    }
+
+}
@@ -0,0 +1,109 @@
+/**
+ * Helpers for the {@code --name} and {@code --name=value} options accepted by
+ * the main programs.
+ *
+ * @author Julia Pittner
+ */
+public final class CommandLineOptions {
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private CommandLineOptions() {
+    }
+
+    /**
+     * Reports whether the command line has the option {@code name}, with or
+     * without a value.
+     *
+     * @param args
+     *            the command line arguments
+     * @param name
+     *            the option, including its leading dashes
+     * @return true iff {@code name} or {@code name=...} is one of {@code args}
+     */
+    public static boolean has(String[] args, String name) {
+        assert args != null : "Violation of: args is not null";
+        assert name != null : "Violation of: name is not null";
+        boolean found = false;
+        for (String arg : args) {
+            found = found || arg.equals(name) || arg.startsWith(name + "=");
+        }
+        return found;
+    }
+
+    /**
+     * Returns the value of the option {@code name=value}, or
+     * {@code defaultValue} if the command line does not give one. If the
+     * option is given more than once, the last one wins.
+     *
+     * @param args
+     *            the command line arguments
+     * @param name
+     *            the option, including its leading dashes
+     * @param defaultValue
+     *            the value to use if the option has no value
+     * @return the value of the option
+     */
+    public static String value(String[] args, String name,
+            String defaultValue) {
+        assert args != null : "Violation of: args is not null";
+        assert name != null : "Violation of: name is not null";
+        String prefix = name + "=";
+        String result = defaultValue;
+        for (String arg : args) {
+            if (arg.startsWith(prefix)) {
+                result = arg.substring(prefix.length());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the value of the option {@code name=value} as an {@code int},
+     * or {@code defaultValue} if the command line does not give one.
+     *
+     * @param args
+     *            the command line arguments
+     * @param name
+     *            the option, including its leading dashes
+     * @param defaultValue
+     *            the value to use if the option has no value
+     * @return the value of the option
+     * @throws NumberFormatException
+     *             if the value is not an {@code int}
+     */
+    public static int intValue(String[] args, String name, int defaultValue) {
+        String value = value(args, name, null);
+        int result = defaultValue;
+        if (value != null) {
+            result = Integer.parseInt(value);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the value of the option {@code name=value} as a {@code double},
+     * or {@code defaultValue} if the command line does not give one.
+     *
+     * @param args
+     *            the command line arguments
+     * @param name
+     *            the option, including its leading dashes
+     * @param defaultValue
+     *            the value to use if the option has no value
+     * @return the value of the option
+     * @throws NumberFormatException
+     *             if the value is not a number
+     */
+    public static double doubleValue(String[] args, String name,
+            double defaultValue) {
+        String value = value(args, name, null);
+        double result = defaultValue;
+        if (value != null) {
+            result = Double.parseDouble(value);
+        }
+        return result;
+    }
+
+}
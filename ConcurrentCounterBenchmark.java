@@ -0,0 +1,206 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntConsumer;
+
+/**
+ * Compares ways for several threads to count one stream of words: a shared
+ * {@code ConcurrentHashMap<String, Integer>} updated with {@code merge}, a
+ * shared {@code ConcurrentWordCounter} given {@code String}s, the same counter
+ * given the words' UTF-8 bytes as a tokenizer passes them, and a
+ * {@code WordCountTable} per thread merged at the end. The words follow a
+ * Zipf distribution, like natural text, so a few words take most of the
+ * increments; one in {@code ACCENTED} has a non-ASCII letter.
+ *
+ * <p>
+ * Arguments, all optional: {@code --threads=n} (default: one per processor),
+ * {@code --words=n} (default 4000000), {@code --vocabulary=n} (default 50000)
+ * and {@code --rounds=n} (default 5).
+ *
+ * @author Julia Pittner
+ */
+public final class ConcurrentCounterBenchmark {
+
+    /**
+     * Seed for the word stream, so every run counts the same words.
+     */
+    private static final long SEED = 42;
+
+    /**
+     * Nanoseconds per millisecond.
+     */
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    /**
+     * One word of the vocabulary in this many ends in a non-ASCII letter.
+     */
+    private static final int ACCENTED = 16;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private ConcurrentCounterBenchmark() {
+    }
+
+    /**
+     * Returns {@code length} words drawn from a vocabulary of
+     * {@code vocabulary} words with Zipf's law: word {@code k} is drawn with
+     * probability proportional to 1 / k.
+     *
+     * @param length
+     *            the number of words
+     * @param vocabulary
+     *            the number of distinct words to draw from
+     * @return the words
+     */
+    private static String[] zipfWords(int length, int vocabulary) {
+        String[] words = new String[vocabulary];
+        double[] cumulative = new double[vocabulary];
+        double total = 0;
+        for (int k = 0; k < vocabulary; k++) {
+            words[k] = "w" + Integer.toString(k, Character.MAX_RADIX);
+            if (k % ACCENTED == ACCENTED - 1) {
+                words[k] += "\u00e9";
+            }
+            total += 1.0 / (k + 1);
+            cumulative[k] = total;
+        }
+        Random random = new Random(SEED);
+        String[] stream = new String[length];
+        for (int i = 0; i < length; i++) {
+            double u = random.nextDouble() * total;
+            int low = 0;
+            int high = vocabulary - 1;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (cumulative[middle] < u) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            /*
+             * Fresh copies, as a tokenizer would make.
+             */
+            stream[i] = new String(words[low].toCharArray());
+        }
+        return stream;
+    }
+
+    /**
+     * Runs {@code work} on {@code threads} threads, passing each its thread
+     * number, and returns the elapsed time.
+     *
+     * @param threads
+     *            the number of threads
+     * @param work
+     *            the work of one thread
+     * @return the elapsed time in nanoseconds
+     */
+    private static long timeThreads(int threads, IntConsumer work) {
+        List<Thread> running = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            Thread thread = new Thread(() -> work.accept(id));
+            running.add(thread);
+            thread.start();
+        }
+        for (Thread thread : running) {
+            boolean joined = false;
+            while (!joined) {
+                try {
+                    thread.join();
+                    joined = true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments, as described above
+     */
+    public static void main(String[] args) {
+        int threads = CommandLineOptions.intValue(args, "--threads",
+                Runtime.getRuntime().availableProcessors());
+        int length = CommandLineOptions.intValue(args, "--words", 4_000_000);
+        int vocabulary = CommandLineOptions.intValue(args, "--vocabulary",
+                50_000);
+        int rounds = CommandLineOptions.intValue(args, "--rounds", 5);
+        String[] words = zipfWords(length, vocabulary);
+        byte[][] bytes = new byte[length][];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = words[i].getBytes(StandardCharsets.UTF_8);
+        }
+        int slice = (length + threads - 1) / threads;
+
+        System.out.println("threads=" + threads + " words=" + length
+                + " vocabulary=" + vocabulary);
+        for (int round = 1; round <= rounds; round++) {
+            ConcurrentHashMap<String, Integer> map = new ConcurrentHashMap<>();
+            long mapTime = timeThreads(threads, t -> {
+                for (int i = t * slice; i < Math.min(length,
+                        (t + 1) * slice); i++) {
+                    map.merge(words[i], 1, Integer::sum);
+                }
+            });
+
+            ConcurrentWordCounter counter = new ConcurrentWordCounter();
+            long counterTime = timeThreads(threads, t -> {
+                for (int i = t * slice; i < Math.min(length,
+                        (t + 1) * slice); i++) {
+                    counter.increment(words[i]);
+                }
+            });
+
+            ConcurrentWordCounter byteCounter = new ConcurrentWordCounter();
+            long bytesTime = timeThreads(threads, t -> {
+                for (int i = t * slice; i < Math.min(length,
+                        (t + 1) * slice); i++) {
+                    byteCounter.addWord(bytes[i], bytes[i].length);
+                }
+            });
+
+            WordCountTable[] tables = new WordCountTable[threads];
+            WordCountTable merged = new WordCountTable();
+            long tablesTime = timeThreads(threads, t -> {
+                WordCountTable table = new WordCountTable();
+                for (int i = t * slice; i < Math.min(length,
+                        (t + 1) * slice); i++) {
+                    table.increment(words[i]);
+                }
+                tables[t] = table;
+            });
+            long mergeStart = System.nanoTime();
+            for (WordCountTable table : tables) {
+                table.forEach(merged::add);
+            }
+            tablesTime += System.nanoTime() - mergeStart;
+
+            boolean same = map.size() == counter.size()
+                    && map.size() == byteCounter.size()
+                    && map.size() == merged.size();
+            for (String word : map.keySet()) {
+                int count = map.get(word);
+                same = same && counter.count(word) == count
+                        && byteCounter.count(word) == count
+                        && merged.count(word) == count;
+            }
+            System.out.println("round " + round + ": merge "
+                    + mapTime / NANOS_PER_MILLI + " ms, striped "
+                    + counterTime / NANOS_PER_MILLI + " ms, striped bytes "
+                    + bytesTime / NANOS_PER_MILLI + " ms, per-thread "
+                    + tablesTime / NANOS_PER_MILLI + " ms"
+                    + (same ? "" : " (COUNTS DIFFER)"));
+        }
+    }
+
+}
@@ -0,0 +1,435 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Counter of {@code String} words that many threads can update at once. The
+ * words are spread over a fixed number of stripes, each an open-addressing
+ * (linear probing) table of entries. Counting a word that is already there
+ * takes no lock: the probe reads the table without locking and the count is
+ * bumped with an atomic add on the word's entry, so there is no
+ * {@code Integer} box per increment as with
+ * {@code ConcurrentHashMap.merge}. Only adding a new word, or growing a
+ * stripe, locks that one stripe.
+ *
+ * <p>
+ * Entries are never removed, and growing a stripe moves the entries rather
+ * than copying their counts, so an increment that raced with the growth still
+ * lands on the live entry.
+ *
+ * <p>
+ * As a {@code Utf8WordSink} the counter takes words as UTF-8 bytes straight
+ * from a tokenizer. An ASCII word is hashed and compared as bytes, with the
+ * same hash its {@code String} has, and only a word that is not there yet is
+ * decoded; any other word is decoded first.
+ *
+ * @author Julia Pittner
+ */
+public final class ConcurrentWordCounter implements Utf8WordSink {
+
+    /**
+     * Default number of distinct words to make room for.
+     */
+    private static final int DEFAULT_EXPECTED_WORDS = 1 << 10;
+
+    /**
+     * Stripes per available processor, so that threads rarely insert into the
+     * same stripe at once.
+     */
+    private static final int STRIPES_PER_PROCESSOR = 4;
+
+    /**
+     * Largest number of stripes.
+     */
+    private static final int MAX_STRIPES = 1 << 8;
+
+    /**
+     * Multiplier for Fibonacci hashing (2^32 divided by the golden ratio).
+     */
+    private static final int GOLDEN = 0x9E3779B9;
+
+    /**
+     * Bits in an {@code int}.
+     */
+    private static final int INT_BITS = 32;
+
+    /**
+     * Multiplier of {@code String.hashCode}.
+     */
+    private static final int STRING_HASH_PRIME = 31;
+
+    /**
+     * Atomic access to {@code Entry.count}.
+     */
+    private static final VarHandle COUNT;
+
+    static {
+        try {
+            COUNT = MethodHandles.lookup().findVarHandle(Entry.class, "count",
+                    int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * The stripes.
+     */
+    private final Stripe[] stripes;
+
+    /**
+     * log2 of the number of stripes.
+     */
+    private final int stripeBits;
+
+    /**
+     * Creates an empty counter.
+     */
+    public ConcurrentWordCounter() {
+        this(DEFAULT_EXPECTED_WORDS);
+    }
+
+    /**
+     * Creates an empty counter with room for about {@code expectedWords}
+     * distinct words before it has to grow.
+     *
+     * @param expectedWords
+     *            the expected number of distinct words
+     * @requires expectedWords > 0
+     */
+    public ConcurrentWordCounter(int expectedWords) {
+        assert expectedWords > 0 : "Violation of: expectedWords > 0";
+        int wanted = Math.min(MAX_STRIPES, STRIPES_PER_PROCESSOR
+                * Runtime.getRuntime().availableProcessors());
+        this.stripeBits = INT_BITS - Integer.numberOfLeadingZeros(wanted - 1);
+        this.stripes = new Stripe[1 << this.stripeBits];
+        int perStripe = Math.max(1, expectedWords >> this.stripeBits);
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new Stripe(
+                    INT_BITS - Integer.numberOfLeadingZeros(perStripe * 2 - 1));
+        }
+    }
+
+    /**
+     * Adds 1 to the count of {@code word}, adding the word if it is new.
+     *
+     * @param word
+     *            the word to count
+     */
+    public void increment(String word) {
+        this.add(word, 1);
+    }
+
+    /**
+     * Adds {@code count} to the count of {@code word}, adding the word if it is
+     * new.
+     *
+     * @param word
+     *            the word to count
+     * @param count
+     *            the amount to add
+     */
+    public void add(String word, int count) {
+        assert word != null : "Violation of: word is not null";
+        int h = word.hashCode() * GOLDEN;
+        Stripe stripe = this.stripes[h >>> (INT_BITS - this.stripeBits)];
+        Entry entry = stripe.find(stripe.table, h << this.stripeBits, word);
+        if (entry == null) {
+            entry = stripe.findOrInsert(h << this.stripeBits, word);
+        }
+        COUNT.getAndAdd(entry, count);
+    }
+
+    /**
+     * Adds 1 to the count of the word given as UTF-8 bytes, adding the word
+     * if it is new; safe to call from several threads at once. An ASCII word
+     * is decoded only if it is new.
+     *
+     * @param word
+     *            the buffer holding the word
+     * @param length
+     *            the number of bytes of the word, starting at index 0
+     * @requires 0 < length <= |word|
+     */
+    @Override
+    public void addWord(byte[] word, int length) {
+        assert word != null : "Violation of: word is not null";
+        assert 0 < length && length <= word.length
+                : "Violation of: 0 < length <= |word|";
+        int h = 0;
+        boolean ascii = true;
+        for (int i = 0; i < length && ascii; i++) {
+            h = STRING_HASH_PRIME * h + word[i];
+            ascii = word[i] >= 0;
+        }
+        if (ascii) {
+            h *= GOLDEN;
+            Stripe stripe = this.stripes[h >>> (INT_BITS - this.stripeBits)];
+            Entry entry = stripe.find(stripe.table, h << this.stripeBits,
+                    word, length);
+            if (entry == null) {
+                entry = stripe.findOrInsert(h << this.stripeBits, new String(
+                        word, 0, length, StandardCharsets.US_ASCII));
+            }
+            COUNT.getAndAdd(entry, 1);
+        } else {
+            this.add(new String(word, 0, length, StandardCharsets.UTF_8), 1);
+        }
+    }
+
+    /**
+     * Returns the count of {@code word}.
+     *
+     * @param word
+     *            the word
+     * @return the count of the word, or 0 if it was never added
+     */
+    public int count(String word) {
+        assert word != null : "Violation of: word is not null";
+        int h = word.hashCode() * GOLDEN;
+        Stripe stripe = this.stripes[h >>> (INT_BITS - this.stripeBits)];
+        Entry entry = stripe.find(stripe.table, h << this.stripeBits, word);
+        int result = 0;
+        if (entry != null) {
+            result = (int) COUNT.getVolatile(entry);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of distinct words.
+     *
+     * @return the number of distinct words
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : this.stripes) {
+            synchronized (stripe) {
+                size += stripe.size;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Passes every word and its count to {@code action}, in no particular
+     * order. The counts are exact once no thread is updating this.
+     *
+     * @param action
+     *            the receiver of the words and counts
+     */
+    public void forEach(ObjIntConsumer<String> action) {
+        assert action != null : "Violation of: action is not null";
+        for (Stripe stripe : this.stripes) {
+            AtomicReferenceArray<Entry> table = stripe.table;
+            for (int i = 0; i < table.length(); i++) {
+                Entry entry = table.get(i);
+                if (entry != null) {
+                    action.accept(entry.word, (int) COUNT.getVolatile(entry));
+                }
+            }
+        }
+    }
+
+    /**
+     * A word and its count.
+     */
+    private static final class Entry {
+
+        /**
+         * The word.
+         */
+        private final String word;
+
+        /**
+         * The hash the entry is placed by: the word's mixed hash without the
+         * bits that chose the stripe.
+         */
+        private final int hash;
+
+        /**
+         * The count of the word; updated through {@code COUNT} only.
+         */
+        private volatile int count;
+
+        /**
+         * Creates an entry for {@code word} with count 0.
+         *
+         * @param word
+         *            the word
+         * @param hash
+         *            the hash the entry is placed by
+         */
+        Entry(String word, int hash) {
+            this.word = word;
+            this.hash = hash;
+        }
+
+    }
+
+    /**
+     * One stripe: an open-addressing table of entries. Readers probe
+     * {@code table} without locking; inserting and growing lock the stripe.
+     */
+    private static final class Stripe {
+
+        /**
+         * The entry in each slot, or {@code null} if the slot is empty. The
+         * length is a power of two and at least twice {@code size}.
+         */
+        private volatile AtomicReferenceArray<Entry> table;
+
+        /**
+         * Number of entries; guarded by the stripe's lock.
+         */
+        private int size;
+
+        /**
+         * Creates an empty stripe with 2^{@code bits} slots.
+         *
+         * @param bits
+         *            log2 of the number of slots
+         */
+        Stripe(int bits) {
+            this.table = new AtomicReferenceArray<>(1 << bits);
+        }
+
+        /**
+         * Returns the home slot of {@code hash} in {@code table}: the top bits
+         * of the hash, as many as the table has index bits.
+         *
+         * @param table
+         *            the table
+         * @param hash
+         *            the hash the entry is placed by
+         * @return the home slot
+         */
+        private static int home(AtomicReferenceArray<Entry> table, int hash) {
+            return hash >>> Integer.numberOfLeadingZeros(table.length() - 1);
+        }
+
+        /**
+         * Returns the entry for {@code word} in {@code table}, or
+         * {@code null} if it is not there.
+         *
+         * @param table
+         *            the table to probe
+         * @param hash
+         *            the hash the word is placed by
+         * @param word
+         *            the word
+         * @return the entry for the word, or {@code null}
+         */
+        Entry find(AtomicReferenceArray<Entry> table, int hash, String word) {
+            int mask = table.length() - 1;
+            int slot = home(table, hash);
+            Entry entry = table.get(slot);
+            while (entry != null
+                    && !(entry.hash == hash && entry.word.equals(word))) {
+                slot = (slot + 1) & mask;
+                entry = table.get(slot);
+            }
+            return entry;
+        }
+
+        /**
+         * Returns the entry for the ASCII word {@code word[0, length)} in
+         * {@code table}, or {@code null} if it is not there.
+         *
+         * @param table
+         *            the table to probe
+         * @param hash
+         *            the hash the word is placed by
+         * @param word
+         *            the buffer holding the word
+         * @param length
+         *            the length of the word
+         * @return the entry for the word, or {@code null}
+         */
+        Entry find(AtomicReferenceArray<Entry> table, int hash, byte[] word,
+                int length) {
+            int mask = table.length() - 1;
+            int slot = home(table, hash);
+            Entry entry = table.get(slot);
+            while (entry != null && !(entry.hash == hash
+                    && sameWord(entry.word, word, length))) {
+                slot = (slot + 1) & mask;
+                entry = table.get(slot);
+            }
+            return entry;
+        }
+
+        /**
+         * Reports whether {@code s} is the ASCII word {@code word[0, length)}.
+         *
+         * @param s
+         *            a word
+         * @param word
+         *            the buffer holding the other word
+         * @param length
+         *            the length of the other word
+         * @return true iff the words are equal
+         */
+        private static boolean sameWord(String s, byte[] word, int length) {
+            boolean equal = s.length() == length;
+            for (int i = 0; i < length && equal; i++) {
+                equal = s.charAt(i) == word[i];
+            }
+            return equal;
+        }
+
+        /**
+         * Returns the entry for {@code word}, adding one with count 0 if it
+         * is not there.
+         *
+         * @param hash
+         *            the hash the word is placed by
+         * @param word
+         *            the word
+         * @return the entry for the word
+         */
+        synchronized Entry findOrInsert(int hash, String word) {
+            Entry entry = this.find(this.table, hash, word);
+            if (entry == null) {
+                if ((this.size + 1) * 2 > this.table.length()) {
+                    this.grow();
+                }
+                entry = new Entry(word, hash);
+                AtomicReferenceArray<Entry> current = this.table;
+                int mask = current.length() - 1;
+                int slot = home(current, hash);
+                while (current.get(slot) != null) {
+                    slot = (slot + 1) & mask;
+                }
+                current.set(slot, entry);
+                this.size++;
+            }
+            return entry;
+        }
+
+        /**
+         * Doubles the table, moving every entry into the new one.
+         */
+        private void grow() {
+            AtomicReferenceArray<Entry> old = this.table;
+            AtomicReferenceArray<Entry> larger = new AtomicReferenceArray<>(
+                    old.length() * 2);
+            int mask = larger.length() - 1;
+            for (int i = 0; i < old.length(); i++) {
+                Entry entry = old.get(i);
+                if (entry != null) {
+                    int slot = home(larger, entry.hash);
+                    while (larger.get(slot) != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    larger.set(slot, entry);
+                }
+            }
+            this.table = larger;
+        }
+
+    }
+
+}
@@ -0,0 +1,254 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Counts the words of many UTF-8 files, a corpus, on a work-stealing
+ * {@code ForkJoinPool}. Each file is one task, and tasks are submitted
+ * largest file first, so the big files start early and the small ones fill in
+ * the gaps at the end instead of a few big files running alone. Every worker
+ * thread counts into one counter of its own, and the per-worker counters are
+ * merged once all files are done.
+ *
+ * @author Julia Pittner
+ */
+public final class CorpusWordCount {
+
+    /**
+     * Files at least this large are memory-mapped; smaller ones are read.
+     */
+    private static final long MAP_THRESHOLD = 1L << 16;
+
+    /**
+     * Characters that make a path a glob pattern rather than a name.
+     */
+    private static final String GLOB_CHARACTERS = "*?[{";
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private CorpusWordCount() {
+    }
+
+    /**
+     * Returns the regular files named by {@code spec}: every file under it if
+     * it is a directory, the files matching it if it is a glob pattern such
+     * as {@code logs/2024-*.txt} or {@code docs/**.md}, or the file itself
+     * otherwise.
+     *
+     * @param spec
+     *            a directory, glob pattern or file name
+     * @return the files, in no particular order
+     * @throws IOException
+     *             if a directory cannot be listed, or a pattern matches no
+     *             file
+     */
+    public static List<Path> listFiles(String spec) throws IOException {
+        assert spec != null : "Violation of: spec is not null";
+        int firstGlob = spec.length();
+        for (int i = 0; i < GLOB_CHARACTERS.length(); i++) {
+            int at = spec.indexOf(GLOB_CHARACTERS.charAt(i));
+            if (at >= 0) {
+                firstGlob = Math.min(firstGlob, at);
+            }
+        }
+        List<Path> files;
+        if (firstGlob == spec.length()) {
+            Path path = Paths.get(spec);
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> walk = Files.walk(path)) {
+                    files = walk.filter(Files::isRegularFile)
+                            .collect(Collectors.toList());
+                }
+            } else {
+                files = new ArrayList<>();
+                files.add(path);
+            }
+        } else {
+            /*
+             * Walk from the deepest directory before the first wildcard and
+             * keep what the whole pattern matches.
+             */
+            int slash = spec.lastIndexOf('/', firstGlob);
+            Path base = Paths.get(".");
+            if (slash >= 0) {
+                base = Paths.get(spec.substring(0, slash + 1));
+            }
+            Path root = base;
+            PathMatcher matcher = FileSystems.getDefault()
+                    .getPathMatcher("glob:" + spec);
+            try (Stream<Path> walk = Files.walk(base)) {
+                files = walk.filter(Files::isRegularFile)
+                        .filter(p -> matcher.matches(p) || matcher
+                                .matches(root.relativize(p)))
+                        .collect(Collectors.toList());
+            }
+            if (files.isEmpty()) {
+                throw new NoSuchFileException(spec);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Counts the words of {@code file} into {@code counter}.
+     *
+     * @param file
+     *            the UTF-8 file
+     * @param separators
+     *            the classifier for separator characters
+     * @param lowerCase
+     *            whether to lowercase words
+     * @param counter
+     *            the counter to add the words to
+     * @throws IOException
+     *             if reading fails
+     */
+    static void countFile(Path file, SeparatorClassifier separators,
+            boolean lowerCase, Utf8WordCounter counter) throws IOException {
+        Utf8Tokenizer tokenizer = new Utf8Tokenizer(separators, lowerCase,
+                counter);
+        if (Files.size(file) >= MAP_THRESHOLD) {
+            try (FileChannel channel = FileChannel.open(file)) {
+                MappedFileInput.feedAll(channel, tokenizer);
+            }
+        } else {
+            try (InputStream in = Files.newInputStream(file)) {
+                tokenizer.readFrom(in, Utf8Tokenizer.DEFAULT_BUFFER_SIZE);
+            }
+        }
+    }
+
+    /**
+     * Returns the size of {@code file}, or 0 if it cannot be read.
+     *
+     * @param file
+     *            the file
+     * @return the size of the file in bytes
+     */
+    private static long sizeOf(Path file) {
+        long size = 0;
+        try {
+            size = Files.size(file);
+        } catch (IOException e) {
+            /*
+             * The error is reported when the file is counted.
+             */
+            size = 0;
+        }
+        return size;
+    }
+
+    /**
+     * Counts the words of all {@code files} on {@code pool}, largest file
+     * first.
+     *
+     * @param files
+     *            the UTF-8 files
+     * @param separators
+     *            the classifier for separator characters; must be ASCII
+     * @param lowerCase
+     *            whether to lowercase words
+     * @param pool
+     *            the pool to count on
+     * @return the words of all files and their total counts
+     * @throws IOException
+     *             if reading any file fails
+     */
+    public static Utf8WordCounter count(List<Path> files,
+            SeparatorClassifier separators, boolean lowerCase,
+            ForkJoinPool pool) throws IOException {
+        assert files != null : "Violation of: files is not null";
+        assert separators != null : "Violation of: separators is not null";
+        assert pool != null : "Violation of: pool is not null";
+
+        Map<Path, Long> sizes = new HashMap<>();
+        for (Path file : files) {
+            sizes.put(file, sizeOf(file));
+        }
+        List<Path> bySize = new ArrayList<>(files);
+        bySize.sort(Comparator.comparing(sizes::get,
+                Comparator.reverseOrder()));
+
+        List<Utf8WordCounter> workerCounters = new ArrayList<>();
+        ThreadLocal<Utf8WordCounter> workerCounter = ThreadLocal
+                .withInitial(() -> {
+                    Utf8WordCounter counter = new Utf8WordCounter();
+                    synchronized (workerCounters) {
+                        workerCounters.add(counter);
+                    }
+                    return counter;
+                });
+
+        List<Future<?>> tasks = new ArrayList<>();
+        for (Path file : bySize) {
+            tasks.add(pool.submit(() -> {
+                try {
+                    countFile(file, separators, lowerCase,
+                            workerCounter.get());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(file.toString(), e);
+                }
+            }));
+        }
+        waitFor(tasks);
+
+        Utf8WordCounter result = new Utf8WordCounter();
+        synchronized (workerCounters) {
+            for (Utf8WordCounter counter : workerCounters) {
+                result = ParallelWordCount.merge(result, counter);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Waits for every task in {@code tasks} to finish, and rethrows the
+     * first {@code IOException} any of them failed with.
+     *
+     * @param tasks
+     *            the tasks to wait for
+     * @throws IOException
+     *             if a task failed to read its input
+     */
+    static void waitFor(List<? extends Future<?>> tasks) throws IOException {
+        IOException failure = null;
+        for (Future<?> task : tasks) {
+            try {
+                task.get();
+            } catch (ExecutionException e) {
+                if (!(e.getCause() instanceof UncheckedIOException)) {
+                    throw new IllegalStateException(e.getCause());
+                }
+                if (failure == null) {
+                    failure = ((UncheckedIOException) e.getCause())
+                            .getCause();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while counting", e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+}
@@ -0,0 +1,203 @@
+/**
+ * Count-Min Sketch: approximate counts of items in fixed memory, however many
+ * distinct items there are. Each item is counted in one cell of each of
+ * {@code depth} rows of {@code width} counters, picked by hashing, and its
+ * estimate is the smallest of those cells. An estimate is never below the true
+ * count, and with probability at least {@code 1 - delta} it is at most
+ * {@code epsilon} times the total of all counts above it, where
+ * {@code width = ceil(e / epsilon)} and {@code depth = ceil(ln(1 / delta))}.
+ *
+ * <p>
+ * Items are given by a 64-bit hash; the rows use
+ * {@code h1 + i * h2 (mod width)}, with {@code h1} and {@code h2} the two
+ * halves of the hash.
+ *
+ * @author Julia Pittner
+ */
+public final class CountMinSketch {
+
+    /**
+     * Bits in an {@code int}.
+     */
+    private static final int INT_BITS = 32;
+
+    /**
+     * Largest number of counters a sketch may have (512 MB of them).
+     */
+    public static final long MAX_CELLS = 1L << 27;
+
+    /**
+     * The counters, row after row.
+     */
+    private final int[] cells;
+
+    /**
+     * Number of counters per row.
+     */
+    private final int width;
+
+    /**
+     * Number of rows.
+     */
+    private final int depth;
+
+    /**
+     * The error factor the sketch was sized for.
+     */
+    private final double epsilon;
+
+    /**
+     * The failure probability the sketch was sized for.
+     */
+    private final double delta;
+
+    /**
+     * Total of all counts added.
+     */
+    private long total;
+
+    /**
+     * Creates an empty sketch whose estimates exceed the true counts by at most
+     * {@code epsilon} times the total count, with probability at least
+     * {@code 1 - delta}.
+     *
+     * @param epsilon
+     *            the error factor
+     * @param delta
+     *            the failure probability
+     * @throws IllegalArgumentException
+     *             if the sketch would have more than {@code MAX_CELLS}
+     *             counters
+     * @requires 0 < epsilon < 1 and 0 < delta < 1
+     */
+    public CountMinSketch(double epsilon, double delta) {
+        assert 0 < epsilon && epsilon < 1 : "Violation of: 0 < epsilon < 1";
+        assert 0 < delta && delta < 1 : "Violation of: 0 < delta < 1";
+        long cellCount = cellCount(epsilon, delta);
+        if (cellCount > MAX_CELLS) {
+            throw new IllegalArgumentException("a sketch for epsilon "
+                    + epsilon + " and delta " + delta + " needs " + cellCount
+                    + " counters, more than " + MAX_CELLS);
+        }
+        this.epsilon = epsilon;
+        this.delta = delta;
+        this.width = (int) Math.ceil(Math.E / epsilon);
+        this.depth = (int) Math.ceil(Math.log(1 / delta));
+        this.cells = new int[(int) cellCount];
+    }
+
+    /**
+     * Returns the number of counters of a sketch for {@code epsilon} and
+     * {@code delta}, or {@code Long.MAX_VALUE} if it does not fit in a
+     * {@code long}.
+     *
+     * @param epsilon
+     *            the error factor
+     * @param delta
+     *            the failure probability
+     * @return the number of counters
+     * @requires 0 < epsilon < 1 and 0 < delta < 1
+     */
+    public static long cellCount(double epsilon, double delta) {
+        assert 0 < epsilon && epsilon < 1 : "Violation of: 0 < epsilon < 1";
+        assert 0 < delta && delta < 1 : "Violation of: 0 < delta < 1";
+        double cells = Math.ceil(Math.E / epsilon)
+                * Math.ceil(Math.log(1 / delta));
+        long result = Long.MAX_VALUE;
+        if (cells < Long.MAX_VALUE) {
+            result = (long) cells;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the cell of row {@code row} for the item with hash {@code hash}.
+     *
+     * @param hash
+     *            the 64-bit hash of the item
+     * @param row
+     *            the row
+     * @return the index of the cell in {@code cells}
+     */
+    private int cell(long hash, int row) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> INT_BITS) | 1;
+        return row * this.width + Math.floorMod(h1 + row * h2, this.width);
+    }
+
+    /**
+     * Adds {@code count} to the item with hash {@code hash} and returns its new
+     * estimate.
+     *
+     * @param hash
+     *            the 64-bit hash of the item
+     * @param count
+     *            the amount to add
+     * @return the estimated count of the item
+     * @requires count >= 0
+     */
+    public int add(long hash, int count) {
+        assert count >= 0 : "Violation of: count >= 0";
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < this.depth; row++) {
+            int i = this.cell(hash, row);
+            this.cells[i] += count;
+            estimate = Math.min(estimate, this.cells[i]);
+        }
+        this.total += count;
+        return estimate;
+    }
+
+    /**
+     * Returns the estimated count of the item with hash {@code hash}.
+     *
+     * @param hash
+     *            the 64-bit hash of the item
+     * @return the estimated count of the item
+     */
+    public int estimate(long hash) {
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < this.depth; row++) {
+            estimate = Math.min(estimate, this.cells[this.cell(hash, row)]);
+        }
+        return estimate;
+    }
+
+    /**
+     * Returns the total of all counts added.
+     *
+     * @return the total count
+     */
+    public long total() {
+        return this.total;
+    }
+
+    /**
+     * Returns the largest amount by which an estimate may exceed the true
+     * count, with probability {@code 1 - delta}: {@code epsilon * total()}.
+     *
+     * @return the error bound
+     */
+    public long errorBound() {
+        return (long) Math.ceil(this.epsilon * this.total);
+    }
+
+    /**
+     * Returns the error factor the sketch was sized for.
+     *
+     * @return epsilon
+     */
+    public double epsilon() {
+        return this.epsilon;
+    }
+
+    /**
+     * Returns the failure probability the sketch was sized for.
+     *
+     * @return delta
+     */
+    public double delta() {
+        return this.delta;
+    }
+
+}
@@ -0,0 +1,448 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * A table of words and counts saved to a file and read back through a memory
+ * mapping, so a counted input can be queried again without recounting it.
+ * Opening a table reads nothing but its header; words are decoded only when
+ * asked for.
+ *
+ * <p>
+ * The file holds, after a header, a dictionary of the words in UTF-8 byte
+ * order, front coded in blocks of {@code BLOCK_SIZE}: the first word of a
+ * block is stored whole, and every other word as the length of the prefix it
+ * shares with the word before it plus the rest of its bytes. Then come the
+ * counts, one {@code int} per word in the same order, and the offset of every
+ * block, which a lookup binary-searches on the blocks' first words. Offsets
+ * are {@code int}s and the whole file is mapped at once, so a table must be
+ * under 2 GB; saving a larger one fails.
+ *
+ * @author Julia Pittner
+ */
+public final class CountTableFile {
+
+    /**
+     * First four bytes of every table file.
+     */
+    private static final int MAGIC = 0x57435431;
+
+    /**
+     * Bytes in the header: the magic number, the number of words, and the
+     * offsets of the count column and the block offsets.
+     */
+    private static final int HEADER_SIZE = 16;
+
+    /**
+     * Largest size of a table file, in bytes.
+     */
+    private static final long MAX_TABLE_SIZE = Integer.MAX_VALUE;
+
+    /**
+     * Number of words in a front-coded block.
+     */
+    private static final int BLOCK_SIZE = 16;
+
+    /**
+     * Low seven bits of a byte, the payload of a variable-length integer
+     * byte.
+     */
+    private static final int VARINT_PAYLOAD = 0x7F;
+
+    /**
+     * High bit of a byte, set when a variable-length integer continues.
+     */
+    private static final int VARINT_MORE = 0x80;
+
+    /**
+     * Bits carried by one variable-length integer byte.
+     */
+    private static final int VARINT_SHIFT = 7;
+
+    /**
+     * The mapped file.
+     */
+    private final ByteBuffer table;
+
+    /**
+     * Number of words.
+     */
+    private final int size;
+
+    /**
+     * Offset of the count column.
+     */
+    private final int countsOffset;
+
+    /**
+     * Offset of the block offsets.
+     */
+    private final int blocksOffset;
+
+    /**
+     * A word decoded from the dictionary, as UTF-8 bytes.
+     */
+    private static final class Cursor {
+
+        /**
+         * The bytes of the current word.
+         */
+        private byte[] word = new byte[Utf8Tokenizer.DEFAULT_BUFFER_SIZE];
+
+        /**
+         * The length of the current word.
+         */
+        private int length;
+
+        /**
+         * The offset of the next word in the dictionary.
+         */
+        private int position;
+
+    }
+
+    /**
+     * Creates a view of the mapped table {@code table}.
+     *
+     * @param table
+     *            the mapped file
+     * @throws IOException
+     *             if the file is not a table file
+     */
+    private CountTableFile(ByteBuffer table) throws IOException {
+        this.table = table;
+        if (table.limit() < HEADER_SIZE || table.getInt(0) != MAGIC) {
+            throw new IOException("not a word count table");
+        }
+        this.size = table.getInt(Integer.BYTES);
+        this.countsOffset = table.getInt(2 * Integer.BYTES);
+        this.blocksOffset = table.getInt(3 * Integer.BYTES);
+    }
+
+    /**
+     * Opens the table file {@code file} by mapping it.
+     *
+     * @param file
+     *            the table file
+     * @return the table
+     * @throws IOException
+     *             if the file cannot be mapped or is not a table file
+     */
+    public static CountTableFile open(Path file) throws IOException {
+        MappedByteBuffer table;
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            table = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        }
+        return new CountTableFile(table);
+    }
+
+    /**
+     * Writes a variable-length integer, seven bits per byte, low bits first.
+     *
+     * @param out
+     *            the file being written
+     * @param value
+     *            the value
+     * @throws IOException
+     *             if writing fails
+     * @requires value >= 0
+     */
+    private static void writeVarint(DataOutputStream out, int value)
+            throws IOException {
+        int rest = value;
+        while (rest > VARINT_PAYLOAD) {
+            out.writeByte((rest & VARINT_PAYLOAD) | VARINT_MORE);
+            rest >>>= VARINT_SHIFT;
+        }
+        out.writeByte(rest);
+    }
+
+    /**
+     * Throws if a table of {@code bytes} bytes would be too large.
+     *
+     * @param bytes
+     *            the size of the table, or of the part written so far
+     * @throws IOException
+     *             if the size reaches {@code MAX_TABLE_SIZE}
+     */
+    private static void checkSize(long bytes) throws IOException {
+        if (bytes >= MAX_TABLE_SIZE) {
+            throw new IOException("word count table would exceed 2 GB");
+        }
+    }
+
+    /**
+     * Saves the words and counts {@code entries} passes to its argument as a
+     * table file {@code file}, replacing it once the new table is complete.
+     * If the table would reach 2 GB, nothing is saved.
+     *
+     * @param file
+     *            the table file
+     * @param entries
+     *            passes every distinct word and its count to the action it is
+     *            given
+     * @throws IOException
+     *             if the file cannot be written, or the table would be too
+     *             large
+     */
+    public static void save(Path file,
+            Consumer<ObjIntConsumer<String>> entries) throws IOException {
+        assert file != null : "Violation of: file is not null";
+        assert entries != null : "Violation of: entries is not null";
+        List<byte[]> words = new ArrayList<>();
+        List<Integer> countList = new ArrayList<>();
+        entries.accept((word, count) -> {
+            words.add(word.getBytes(StandardCharsets.UTF_8));
+            countList.add(count);
+        });
+        Integer[] order = new Integer[words.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (i, j) -> Arrays.compareUnsigned(words.get(i),
+                words.get(j)));
+
+        Path temporary = file
+                .resolveSibling(file.getFileName().toString() + ".tmp");
+        try {
+            writeTable(temporary, words, countList, order);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Writes the table of {@code words} and {@code counts}, taken in the
+     * order of {@code order}, to {@code file}.
+     *
+     * @param file
+     *            the file to write
+     * @param words
+     *            the UTF-8 bytes of the words
+     * @param counts
+     *            the count of each word
+     * @param order
+     *            the word numbers in UTF-8 byte order
+     * @throws IOException
+     *             if the file cannot be written, or the table would be too
+     *             large
+     */
+    private static void writeTable(Path file, List<byte[]> words,
+            List<Integer> counts, Integer[] order) throws IOException {
+        int[] blocks = new int[(order.length + BLOCK_SIZE - 1) / BLOCK_SIZE];
+        int countsOffset;
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.write(new byte[HEADER_SIZE]);
+            byte[] previous = new byte[0];
+            for (int k = 0; k < order.length; k++) {
+                byte[] word = words.get(order[k]);
+                if (k % BLOCK_SIZE == 0) {
+                    /*
+                     * size() stops at Integer.MAX_VALUE, so checking it at
+                     * every block catches the dictionary outgrowing the int
+                     * offsets.
+                     */
+                    checkSize(out.size());
+                    blocks[k / BLOCK_SIZE] = out.size();
+                    writeVarint(out, word.length);
+                    out.write(word);
+                } else {
+                    int shared = Arrays.mismatch(previous, word);
+                    if (shared < 0) {
+                        shared = word.length;
+                    }
+                    writeVarint(out, shared);
+                    writeVarint(out, word.length - shared);
+                    out.write(word, shared, word.length - shared);
+                }
+                previous = word;
+            }
+            countsOffset = out.size();
+            checkSize(countsOffset + (long) Integer.BYTES
+                    * (order.length + blocks.length));
+            for (int k = 0; k < order.length; k++) {
+                out.writeInt(counts.get(order[k]));
+            }
+            for (int block : blocks) {
+                out.writeInt(block);
+            }
+        }
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(order.length).putInt(countsOffset)
+                    .putInt(countsOffset + order.length * Integer.BYTES);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        }
+    }
+
+    /**
+     * Returns the number of words.
+     *
+     * @return the number of words
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the count of the word with number {@code k}.
+     *
+     * @param k
+     *            the word number
+     * @return the count
+     */
+    private int countAt(int k) {
+        return this.table.getInt(this.countsOffset + k * Integer.BYTES);
+    }
+
+    /**
+     * Reads a variable-length integer at the cursor's position and moves past
+     * it.
+     *
+     * @param cursor
+     *            the cursor
+     * @return the value
+     */
+    private int readVarint(Cursor cursor) {
+        int value = 0;
+        int shift = 0;
+        int b = VARINT_MORE;
+        while ((b & VARINT_MORE) != 0) {
+            b = this.table.get(cursor.position);
+            cursor.position++;
+            value |= (b & VARINT_PAYLOAD) << shift;
+            shift += VARINT_SHIFT;
+        }
+        return value;
+    }
+
+    /**
+     * Decodes the word with number {@code k} into {@code cursor}, given that
+     * the cursor holds word {@code k - 1} unless {@code k} starts a block.
+     *
+     * @param cursor
+     *            the cursor
+     * @param k
+     *            the word number
+     */
+    private void next(Cursor cursor, int k) {
+        int shared = 0;
+        if (k % BLOCK_SIZE == 0) {
+            cursor.position = this.table
+                    .getInt(this.blocksOffset + k / BLOCK_SIZE * Integer.BYTES);
+        } else {
+            shared = this.readVarint(cursor);
+        }
+        int rest = this.readVarint(cursor);
+        if (shared + rest > cursor.word.length) {
+            cursor.word = Arrays.copyOf(cursor.word, shared + rest);
+        }
+        this.table.get(cursor.position, cursor.word, shared, rest);
+        cursor.position += rest;
+        cursor.length = shared + rest;
+    }
+
+    /**
+     * Returns the count of {@code word}.
+     *
+     * @param word
+     *            the word
+     * @return the count of the word, or 0 if it is not in the table
+     */
+    public int count(String word) {
+        assert word != null : "Violation of: word is not null";
+        byte[] key = word.getBytes(StandardCharsets.UTF_8);
+        Cursor cursor = new Cursor();
+        /*
+         * Find the last block whose first word is not after the key.
+         */
+        int low = 0;
+        int high = (this.size + BLOCK_SIZE - 1) / BLOCK_SIZE - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            this.next(cursor, middle * BLOCK_SIZE);
+            if (Arrays.compareUnsigned(cursor.word, 0, cursor.length, key, 0,
+                    key.length) <= 0) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        int result = 0;
+        int k = low * BLOCK_SIZE;
+        int end = Math.min(this.size, k + BLOCK_SIZE);
+        while (k < end) {
+            this.next(cursor, k);
+            if (Arrays.equals(cursor.word, 0, cursor.length, key, 0,
+                    key.length)) {
+                result = this.countAt(k);
+                end = k;
+            }
+            k++;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the {@code n}th largest count, or 0 if there are fewer than
+     * {@code n} words. Only the count column is read.
+     *
+     * @param n
+     *            the rank of the count
+     * @return the nth largest count
+     * @requires n > 0
+     */
+    public int nthLargestCount(int n) {
+        LargestCounts largest = new LargestCounts(n);
+        for (int k = 0; k < this.size; k++) {
+            largest.offer(this.countAt(k));
+        }
+        return largest.nth();
+    }
+
+    /**
+     * Passes every word whose count is at least {@code minCount}, decoded
+     * from UTF-8, and its count to {@code action}, in UTF-8 byte order. Words
+     * with smaller counts are skipped without being decoded.
+     *
+     * @param minCount
+     *            the smallest count passed on
+     * @param action
+     *            the receiver of the words and counts
+     */
+    public void forEach(int minCount, ObjIntConsumer<String> action) {
+        assert action != null : "Violation of: action is not null";
+        Cursor cursor = new Cursor();
+        for (int k = 0; k < this.size; k++) {
+            this.next(cursor, k);
+            int count = this.countAt(k);
+            if (count >= minCount) {
+                action.accept(new String(cursor.word, 0, cursor.length,
+                        StandardCharsets.UTF_8), count);
+            }
+        }
+    }
+
+}
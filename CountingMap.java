@@ -0,0 +1,307 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import components.map.Map;
+import components.map.MapSecondary;
+
+/**
+ * {@code Map<String, Integer>} represented as a hash table of words and
+ * counts ({@code WordCountTable}), with an extra {@code increment} operation
+ * that adds a word or bumps its count in a single probe. {@code add},
+ * {@code remove}, {@code value}, {@code hasKey} and {@code increment} all take
+ * expected constant time.
+ *
+ * @convention <pre>
+ * $this.rep has no null keys  and
+ * $this.cursor is an index of a slot of $this.rep
+ * </pre>
+ * @correspondence <pre>
+ * this = {(key, value) : key is a word in $this.rep  and
+ *                        value is the count of key in $this.rep}
+ * </pre>
+ *
+ * @author Julia Pittner
+ */
+public class CountingMap extends MapSecondary<String, Integer> {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Number of distinct keys a map is sized for by default.
+     */
+    private static final int DEFAULT_EXPECTED_KEYS = 1 << 10;
+
+    /**
+     * Words and their counts.
+     */
+    private WordCountTable rep;
+
+    /**
+     * Number of distinct keys the representation is sized for.
+     */
+    private int expectedKeys;
+
+    /**
+     * Slot where {@code removeAny} starts looking, so that draining the map
+     * does not rescan the slots it has already emptied.
+     */
+    private int cursor;
+
+    /**
+     * Creator of initial representation.
+     */
+    private void createNewRep() {
+        this.rep = new WordCountTable(this.expectedKeys);
+        this.cursor = 0;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor.
+     */
+    public CountingMap() {
+        this(DEFAULT_EXPECTED_KEYS);
+    }
+
+    /**
+     * Constructor for a map expected to hold about {@code expectedKeys} keys,
+     * sized so that it does not have to grow until it does.
+     *
+     * @param expectedKeys
+     *            the expected number of keys
+     * @requires expectedKeys > 0
+     */
+    public CountingMap(int expectedKeys) {
+        assert expectedKeys > 0 : "Violation of: expectedKeys > 0";
+        this.expectedKeys = expectedKeys;
+        this.createNewRep();
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @Override
+    public final Map<String, Integer> newInstance() {
+        try {
+            return this.getClass().getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(
+                    "Cannot construct object of type " + this.getClass());
+        }
+    }
+
+    @Override
+    public final void clear() {
+        this.createNewRep();
+    }
+
+    @Override
+    public final void transferFrom(Map<String, Integer> source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+        assert source instanceof CountingMap : ""
+                + "Violation of: source is of dynamic type CountingMap";
+        CountingMap localSource = (CountingMap) source;
+        this.rep = localSource.rep;
+        this.cursor = localSource.cursor;
+        localSource.createNewRep();
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public final void add(String key, Integer value) {
+        assert key != null : "Violation of: key is not null";
+        assert value != null : "Violation of: value is not null";
+        assert !this.hasKey(key) : "Violation of: key is not in DOMAIN(this)";
+
+        this.rep.add(key, value);
+    }
+
+    @Override
+    public final Pair<String, Integer> remove(String key) {
+        assert key != null : "Violation of: key is not null";
+        assert this.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+
+        int value = this.rep.remove(key);
+        return new SimplePair<>(key, value);
+    }
+
+    @Override
+    public final Pair<String, Integer> removeAny() {
+        assert this.size() > 0 : "Violation of: this /= empty_set";
+
+        int slots = this.rep.slots();
+        while (this.rep.keyAt(this.cursor) == null) {
+            this.cursor = (this.cursor + 1) % slots;
+        }
+        return this.remove(this.rep.keyAt(this.cursor));
+    }
+
+    @Override
+    public final Integer value(String key) {
+        assert key != null : "Violation of: key is not null";
+        assert this.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+
+        return this.rep.count(key);
+    }
+
+    @Override
+    public final boolean hasKey(String key) {
+        assert key != null : "Violation of: key is not null";
+
+        return this.rep.contains(key);
+    }
+
+    @Override
+    public final int size() {
+        return this.rep.size();
+    }
+
+    @Override
+    public final Iterator<Pair<String, Integer>> iterator() {
+        return new CountingMapIterator();
+    }
+
+    /*
+     * Other methods ----------------------------------------------------------
+     */
+
+    /**
+     * Adds 1 to the value of {@code key}, or adds {@code key} with value 1 if
+     * it is not in this.
+     *
+     * @param key
+     *            the key to count
+     * @updates this
+     * @ensures <pre>
+     * if key is in DOMAIN(#this)
+     * then this = (#this \ {(key, #this(key))}) union {(key, #this(key) + 1)}
+     * else this = #this union {(key, 1)}
+     * </pre>
+     */
+    public final void increment(String key) {
+        assert key != null : "Violation of: key is not null";
+
+        this.rep.increment(key);
+    }
+
+    /**
+     * Adds {@code amount} to the value of {@code key}, or adds {@code key}
+     * with value {@code amount} if it is not in this.
+     *
+     * @param key
+     *            the key to count
+     * @param amount
+     *            the amount to add
+     * @updates this
+     * @ensures <pre>
+     * if key is in DOMAIN(#this)
+     * then this = (#this \ {(key, #this(key))}) union
+     *             {(key, #this(key) + amount)}
+     * else this = #this union {(key, amount)}
+     * </pre>
+     */
+    public final void increment(String key, int amount) {
+        assert key != null : "Violation of: key is not null";
+
+        this.rep.add(key, amount);
+    }
+
+    /**
+     * Adds 1 to the value of the key {@code chars[start, end)}, or adds it
+     * with value 1 if it is not in this. A {@code String} is only made for a
+     * key that is not already in this.
+     *
+     * @param chars
+     *            the buffer holding the key
+     * @param start
+     *            the start of the key
+     * @param end
+     *            the end (exclusive) of the key
+     * @updates this
+     * @requires 0 <= start <= end <= |chars|
+     * @ensures <pre>
+     * if key is in DOMAIN(#this)
+     * then this = (#this \ {(key, #this(key))}) union {(key, #this(key) + 1)}
+     * else this = #this union {(key, 1)}
+     * where key = chars[start, end)
+     * </pre>
+     */
+    public final void increment(char[] chars, int start, int end) {
+        assert chars != null : "Violation of: chars is not null";
+
+        this.rep.increment(chars, start, end);
+    }
+
+    /**
+     * Implementation of {@code Iterator} interface for {@code CountingMap}.
+     */
+    private final class CountingMapIterator
+            implements Iterator<Pair<String, Integer>> {
+
+        /**
+         * Next slot to look at.
+         */
+        private int slot;
+
+        /**
+         * No-argument constructor.
+         */
+        CountingMapIterator() {
+            this.slot = 0;
+            this.skipEmpty();
+        }
+
+        /**
+         * Advances {@code slot} past empty slots.
+         */
+        private void skipEmpty() {
+            WordCountTable table = CountingMap.this.rep;
+            while (this.slot < table.slots()
+                    && table.keyAt(this.slot) == null) {
+                this.slot++;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.slot < CountingMap.this.rep.slots();
+        }
+
+        @Override
+        public Pair<String, Integer> next() {
+            assert this.hasNext() : "Violation of: ~this.unseen /= <>";
+            if (!this.hasNext()) {
+                /*
+                 * Exception is supposed to be thrown in this case, but with
+                 * assertion-checking enabled it cannot happen because of assert
+                 * above.
+                 */
+                throw new NoSuchElementException();
+            }
+            WordCountTable table = CountingMap.this.rep;
+            Pair<String, Integer> result = new SimplePair<>(
+                    table.keyAt(this.slot), table.countAt(this.slot));
+            this.slot++;
+            this.skipEmpty();
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "remove operation not supported");
+        }
+
+    }
+
+}
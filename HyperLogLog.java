@@ -0,0 +1,135 @@
+/**
+ * HyperLogLog estimate of the number of distinct words, in a few kilobytes
+ * however many words there are. Each word's 64-bit fingerprint picks one of
+ * 2^{@code precision} registers with its top bits, and the register keeps the
+ * longest run of leading zeros seen in the remaining bits. The standard error
+ * of the estimate is about {@code 1.04 / sqrt(2^precision)}: 0.8% at the
+ * default precision of 14.
+ *
+ * @author Julia Pittner
+ */
+public final class HyperLogLog implements Utf8WordSink {
+
+    /**
+     * Default log2 of the number of registers.
+     */
+    public static final int DEFAULT_PRECISION = 14;
+
+    /**
+     * Bits in a {@code long}.
+     */
+    private static final int LONG_BITS = 64;
+
+    /**
+     * Bias correction constant for 2^7 or more registers.
+     */
+    private static final double ALPHA_LARGE = 0.7213;
+
+    /**
+     * Bias correction term for 2^7 or more registers.
+     */
+    private static final double ALPHA_TERM = 1.079;
+
+    /**
+     * Below this many times the number of registers, the raw estimate is
+     * biased and linear counting is used instead.
+     */
+    private static final double SMALL_RANGE = 2.5;
+
+    /**
+     * The registers.
+     */
+    private final byte[] registers;
+
+    /**
+     * log2 of the number of registers.
+     */
+    private final int precision;
+
+    /**
+     * Creates an empty estimator with 2^{@code DEFAULT_PRECISION} registers.
+     */
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    /**
+     * Creates an empty estimator with 2^{@code precision} registers.
+     *
+     * @param precision
+     *            log2 of the number of registers
+     * @requires 7 <= precision <= 18
+     */
+    public HyperLogLog(int precision) {
+        assert 7 <= precision && precision <= 18
+                : "Violation of: 7 <= precision <= 18";
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * Adds the item with 64-bit hash {@code hash}.
+     *
+     * @param hash
+     *            the well-mixed hash of the item
+     */
+    public void add(long hash) {
+        int register = (int) (hash >>> (LONG_BITS - this.precision));
+        /*
+         * The sentinel bit bounds the run when the remaining bits are zero.
+         */
+        long rest = (hash << this.precision) | (1L << (this.precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+        if (rank > this.registers[register]) {
+            this.registers[register] = rank;
+        }
+    }
+
+    @Override
+    public void addWord(byte[] word, int length) {
+        this.add(CandidateHeap.fingerprint(word, length));
+    }
+
+    /**
+     * Adds every item {@code other} has seen to this.
+     *
+     * @param other
+     *            the estimator to merge in
+     * @updates this
+     * @requires other has the same precision as this
+     */
+    public void addAll(HyperLogLog other) {
+        assert other != null : "Violation of: other is not null";
+        assert other.precision == this.precision
+                : "Violation of: other has the same precision as this";
+        for (int i = 0; i < this.registers.length; i++) {
+            if (other.registers[i] > this.registers[i]) {
+                this.registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * Returns the estimated number of distinct items added.
+     *
+     * @return the estimate
+     */
+    public long estimate() {
+        int m = this.registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte rank : this.registers) {
+            sum += Math.scalb(1.0, -rank);
+            if (rank == 0) {
+                zeros++;
+            }
+        }
+        double alpha = ALPHA_LARGE / (1 + ALPHA_TERM / m);
+        double estimate = alpha * m * m / sum;
+        if (estimate <= SMALL_RANGE * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+}
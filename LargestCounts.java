@@ -0,0 +1,81 @@
+/**
+ * Finds the {@code n}th largest of a stream of counts with a bounded min-heap
+ * of the {@code n} largest counts seen so far, holding nothing else. Used to
+ * decide which words are worth decoding before the top words are selected.
+ *
+ * @author Julia Pittner
+ */
+final class LargestCounts {
+
+    /**
+     * The largest counts seen so far, as a min-heap.
+     */
+    private final int[] heap;
+
+    /**
+     * Number of counts in {@code heap}.
+     */
+    private int size;
+
+    /**
+     * Creates an empty selector for the {@code n} largest counts.
+     *
+     * @param n
+     *            the number of counts kept
+     * @requires n > 0
+     */
+    LargestCounts(int n) {
+        assert n > 0 : "Violation of: n > 0";
+        this.heap = new int[n];
+    }
+
+    /**
+     * Offers one count.
+     *
+     * @param count
+     *            the count
+     */
+    void offer(int count) {
+        int n = this.heap.length;
+        if (this.size < n) {
+            int i = this.size;
+            this.size++;
+            while (i > 0 && this.heap[(i - 1) / 2] > count) {
+                this.heap[i] = this.heap[(i - 1) / 2];
+                i = (i - 1) / 2;
+            }
+            this.heap[i] = count;
+        } else if (count > this.heap[0]) {
+            int i = 0;
+            int child = 1;
+            while (child < n) {
+                if (child + 1 < n && this.heap[child + 1] < this.heap[child]) {
+                    child++;
+                }
+                if (this.heap[child] < count) {
+                    this.heap[i] = this.heap[child];
+                    i = child;
+                    child = 2 * i + 1;
+                } else {
+                    child = n;
+                }
+            }
+            this.heap[i] = count;
+        }
+    }
+
+    /**
+     * Returns the {@code n}th largest count offered, or 0 if fewer than
+     * {@code n} counts were offered.
+     *
+     * @return the nth largest count
+     */
+    int nth() {
+        int result = 0;
+        if (this.size == this.heap.length) {
+            result = this.heap[0];
+        }
+        return result;
+    }
+
+}
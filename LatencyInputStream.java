@@ -0,0 +1,62 @@
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+/**
+ * Input stream that waits a fixed time before every read of the stream it
+ * wraps, to try out slow, latency-bound storage on a local disk.
+ *
+ * @author Julia Pittner
+ */
+public final class LatencyInputStream extends FilterInputStream {
+
+    /**
+     * The wait before each read, in milliseconds.
+     */
+    private final long delayMillis;
+
+    /**
+     * Creates a stream that reads {@code in}, waiting {@code delayMillis}
+     * before each read.
+     *
+     * @param in
+     *            the stream to read
+     * @param delayMillis
+     *            the wait before each read, in milliseconds
+     * @requires delayMillis >= 0
+     */
+    public LatencyInputStream(InputStream in, long delayMillis) {
+        super(in);
+        assert delayMillis >= 0 : "Violation of: delayMillis >= 0";
+        this.delayMillis = delayMillis;
+    }
+
+    /**
+     * Waits {@code delayMillis}.
+     *
+     * @throws InterruptedIOException
+     *             if interrupted while waiting
+     */
+    private void delay() throws InterruptedIOException {
+        try {
+            Thread.sleep(this.delayMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading");
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        this.delay();
+        return super.read();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        this.delay();
+        return super.read(b, off, len);
+    }
+
+}
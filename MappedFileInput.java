@@ -0,0 +1,78 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Feeds a file to a {@code Utf8Tokenizer} through memory mappings instead of
+ * reads. The tokenizer walks the mapped pages directly, so nothing is copied
+ * from the kernel into a user buffer, and repeated runs over the same file
+ * are served from the page cache.
+ *
+ * <p>
+ * A single mapping is limited to 2 GB, so larger files are mapped one window
+ * at a time; the tokenizer carries a word that straddles two windows.
+ *
+ * @author Julia Pittner
+ */
+public final class MappedFileInput {
+
+    /**
+     * Largest number of bytes mapped at once.
+     */
+    public static final long WINDOW_SIZE = 1L << 30;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private MappedFileInput() {
+    }
+
+    /**
+     * Feeds bytes {@code [start, end)} of {@code channel} to
+     * {@code tokenizer}, without finishing it.
+     *
+     * @param channel
+     *            the file to read
+     * @param start
+     *            the first byte to feed
+     * @param end
+     *            the end (exclusive) of the bytes to feed
+     * @param tokenizer
+     *            the receiver of the bytes
+     * @throws IOException
+     *             if mapping fails
+     * @requires 0 <= start <= end <= channel.size()
+     */
+    public static void feed(FileChannel channel, long start, long end,
+            Utf8Tokenizer tokenizer) throws IOException {
+        assert channel != null : "Violation of: channel is not null";
+        assert tokenizer != null : "Violation of: tokenizer is not null";
+        assert 0 <= start && start <= end
+                : "Violation of: 0 <= start <= end";
+        long position = start;
+        while (position < end) {
+            long length = Math.min(WINDOW_SIZE, end - position);
+            MappedByteBuffer window = channel
+                    .map(FileChannel.MapMode.READ_ONLY, position, length);
+            tokenizer.feed(window);
+            position += length;
+        }
+    }
+
+    /**
+     * Feeds all of {@code channel} to {@code tokenizer} and finishes it.
+     *
+     * @param channel
+     *            the file to read
+     * @param tokenizer
+     *            the receiver of the bytes
+     * @throws IOException
+     *             if mapping fails
+     */
+    public static void feedAll(FileChannel channel, Utf8Tokenizer tokenizer)
+            throws IOException {
+        feed(channel, 0, channel.size(), tokenizer);
+        tokenizer.finish();
+    }
+
+}
@@ -0,0 +1,436 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Word counter whose words, counts and index are all held outside the Java
+ * heap, in pages of direct memory, so the heap it uses stays the same however
+ * large the vocabulary grows and the garbage collector never scans it. Words
+ * are only decoded into {@code String}s for the entries asked for, typically
+ * just the top words.
+ *
+ * <p>
+ * Entries are appended to an arena as a count, a length and the key bytes,
+ * padded to four bytes, and are found with an open-addressing (linear probing)
+ * index of (hash, entry reference) pairs. References are {@code long}s, so the
+ * arena is not limited to what an {@code int} can address. No entry or index
+ * slot crosses a page, so every page is a plain {@code ByteBuffer}. The direct
+ * memory is released when the counter becomes unreachable.
+ *
+ * <p>
+ * Direct memory is capped by the VM, by default at the maximum heap size; a
+ * large vocabulary needs a larger cap, such as
+ * {@code -XX:MaxDirectMemorySize=16g}, or allocating a page fails with an
+ * {@code OutOfMemoryError}.
+ *
+ * @author Julia Pittner
+ */
+public final class OffHeapWordCounter implements Utf8WordSink {
+
+    /**
+     * log2 of the bytes in a page.
+     */
+    private static final int PAGE_BITS = 26;
+
+    /**
+     * Bytes in a page.
+     */
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+    /**
+     * Bytes in an index slot: the hash, then the entry reference.
+     */
+    private static final int SLOT_BYTES = Integer.BYTES + Long.BYTES;
+
+    /**
+     * log2 of the number of index slots in a page.
+     */
+    private static final int SLOT_PAGE_BITS = 22;
+
+    /**
+     * Number of index slots in a page.
+     */
+    private static final int SLOTS_PER_PAGE = 1 << SLOT_PAGE_BITS;
+
+    /**
+     * Bytes before the key of an entry: the count, then the length.
+     */
+    private static final int ENTRY_HEADER = 8;
+
+    /**
+     * Entries are aligned to, and referenced in units of, this many bytes.
+     */
+    private static final int ALIGNMENT = 4;
+
+    /**
+     * Default number of index slots.
+     */
+    private static final int DEFAULT_SLOTS = 1 << 12;
+
+    /**
+     * The index pages, {@code SLOTS_PER_PAGE} slots each. Each slot holds a
+     * hash and an entry reference, the entry's arena address divided by
+     * {@code ALIGNMENT} plus one, or 0 if the slot is empty.
+     */
+    private ByteBuffer[] index;
+
+    /**
+     * Number of index slots, a power of two at least twice {@code size}.
+     */
+    private long slots;
+
+    /**
+     * The arena pages holding the entries.
+     */
+    private final List<ByteBuffer> arena = new ArrayList<>();
+
+    /**
+     * Bytes used in the last arena page; every earlier page is limited to the
+     * bytes it uses.
+     */
+    private int arenaUsed;
+
+    /**
+     * Number of entries.
+     */
+    private int size;
+
+    /**
+     * Scratch buffer for comparing and decoding keys.
+     */
+    private byte[] scratch = new byte[Utf8Tokenizer.DEFAULT_BUFFER_SIZE];
+
+    /**
+     * Creates an empty counter.
+     */
+    public OffHeapWordCounter() {
+        this.index = newIndex(DEFAULT_SLOTS);
+        this.slots = DEFAULT_SLOTS;
+        this.arenaUsed = PAGE_SIZE;
+    }
+
+    /**
+     * Returns zeroed index pages for {@code slots} slots.
+     *
+     * @param slots
+     *            the number of slots
+     * @return the index pages
+     */
+    private static ByteBuffer[] newIndex(long slots) {
+        ByteBuffer[] pages = new ByteBuffer[(int) ((slots + SLOTS_PER_PAGE
+                - 1) >>> SLOT_PAGE_BITS)];
+        for (int p = 0; p < pages.length; p++) {
+            long pageSlots = Math.min(SLOTS_PER_PAGE,
+                    slots - ((long) p << SLOT_PAGE_BITS));
+            pages[p] = ByteBuffer.allocateDirect((int) pageSlots * SLOT_BYTES)
+                    .order(ByteOrder.nativeOrder());
+        }
+        return pages;
+    }
+
+    /**
+     * Returns the index page holding {@code slot} of {@code pages}.
+     *
+     * @param pages
+     *            the index pages
+     * @param slot
+     *            the slot
+     * @return the page
+     */
+    private static ByteBuffer slotPage(ByteBuffer[] pages, long slot) {
+        return pages[(int) (slot >>> SLOT_PAGE_BITS)];
+    }
+
+    /**
+     * Returns the offset of {@code slot} in its index page.
+     *
+     * @param slot
+     *            the slot
+     * @return the offset
+     */
+    private static int slotOffset(long slot) {
+        return (int) (slot & (SLOTS_PER_PAGE - 1)) * SLOT_BYTES;
+    }
+
+    /**
+     * Returns the hash stored in {@code slot} of {@code pages}.
+     *
+     * @param pages
+     *            the index pages
+     * @param slot
+     *            the slot
+     * @return the hash
+     */
+    private static int slotHash(ByteBuffer[] pages, long slot) {
+        return slotPage(pages, slot).getInt(slotOffset(slot));
+    }
+
+    /**
+     * Returns the entry reference stored in {@code slot} of {@code pages}.
+     *
+     * @param pages
+     *            the index pages
+     * @param slot
+     *            the slot
+     * @return the entry reference, or 0 if the slot is empty
+     */
+    private static long slotEntry(ByteBuffer[] pages, long slot) {
+        return slotPage(pages, slot).getLong(slotOffset(slot) + Integer.BYTES);
+    }
+
+    /**
+     * Stores a hash and an entry reference in {@code slot} of {@code pages}.
+     *
+     * @param pages
+     *            the index pages
+     * @param slot
+     *            the slot
+     * @param h
+     *            the hash
+     * @param entry
+     *            the entry reference
+     */
+    private static void setSlot(ByteBuffer[] pages, long slot, int h,
+            long entry) {
+        ByteBuffer page = slotPage(pages, slot);
+        int offset = slotOffset(slot);
+        page.putInt(offset, h);
+        page.putLong(offset + Integer.BYTES, entry);
+    }
+
+    /**
+     * Returns the arena page holding the entry with reference {@code entry}.
+     *
+     * @param entry
+     *            the entry reference
+     * @return the page
+     */
+    private ByteBuffer page(long entry) {
+        long address = (entry - 1L) * ALIGNMENT;
+        return this.arena.get((int) (address >>> PAGE_BITS));
+    }
+
+    /**
+     * Returns the offset in its page of the entry with reference
+     * {@code entry}.
+     *
+     * @param entry
+     *            the entry reference
+     * @return the offset
+     */
+    private static int offset(long entry) {
+        long address = (entry - 1L) * ALIGNMENT;
+        return (int) (address & (PAGE_SIZE - 1));
+    }
+
+    /**
+     * Reports whether the entry with reference {@code entry} has the key
+     * {@code word[0, length)}.
+     *
+     * @param entry
+     *            the entry reference
+     * @param word
+     *            the buffer holding the word
+     * @param length
+     *            the length of the word
+     * @return true iff the keys are equal
+     */
+    private boolean keyEquals(long entry, byte[] word, int length) {
+        ByteBuffer page = this.page(entry);
+        int offset = offset(entry);
+        boolean equal = page.getInt(offset + Integer.BYTES) == length;
+        if (equal) {
+            if (length > this.scratch.length) {
+                this.scratch = new byte[length];
+            }
+            page.get(offset + ENTRY_HEADER, this.scratch, 0, length);
+            equal = Arrays.equals(this.scratch, 0, length, word, 0, length);
+        }
+        return equal;
+    }
+
+    /**
+     * Returns the slot holding {@code word[0, length)}, or the empty slot
+     * where it would go.
+     *
+     * @param h
+     *            the hash of the word
+     * @param word
+     *            the buffer holding the word
+     * @param length
+     *            the length of the word
+     * @return the slot for the word
+     */
+    private long find(int h, byte[] word, int length) {
+        long mask = this.slots - 1;
+        long slot = h & mask;
+        long entry = slotEntry(this.index, slot);
+        while (entry != 0 && !(slotHash(this.index, slot) == h
+                && this.keyEquals(entry, word, length))) {
+            slot = (slot + 1) & mask;
+            entry = slotEntry(this.index, slot);
+        }
+        return slot;
+    }
+
+    /**
+     * Doubles the index and rehashes every entry into it.
+     */
+    private void growIndex() {
+        long larger = this.slots * 2;
+        ByteBuffer[] pages = newIndex(larger);
+        long mask = larger - 1;
+        for (long slot = 0; slot < this.slots; slot++) {
+            long entry = slotEntry(this.index, slot);
+            if (entry != 0) {
+                int h = slotHash(this.index, slot);
+                long target = h & mask;
+                while (slotEntry(pages, target) != 0) {
+                    target = (target + 1) & mask;
+                }
+                setSlot(pages, target, h, entry);
+            }
+        }
+        this.index = pages;
+        this.slots = larger;
+    }
+
+    /**
+     * Appends an entry for {@code word[0, length)} with count 1 to the arena
+     * and returns its reference.
+     *
+     * @param word
+     *            the buffer holding the word
+     * @param length
+     *            the length of the word
+     * @return the entry reference
+     */
+    private long append(byte[] word, int length) {
+        int bytes = (ENTRY_HEADER + length + ALIGNMENT - 1) & -ALIGNMENT;
+        if (this.arenaUsed + bytes > PAGE_SIZE) {
+            if (!this.arena.isEmpty()) {
+                this.arena.get(this.arena.size() - 1).limit(this.arenaUsed);
+            }
+            this.arena.add(ByteBuffer.allocateDirect(PAGE_SIZE)
+                    .order(ByteOrder.nativeOrder()));
+            this.arenaUsed = 0;
+        }
+        ByteBuffer page = this.arena.get(this.arena.size() - 1);
+        int offset = this.arenaUsed;
+        page.putInt(offset, 1);
+        page.putInt(offset + Integer.BYTES, length);
+        page.put(offset + ENTRY_HEADER, word, 0, length);
+        this.arenaUsed += bytes;
+        long address = ((long) (this.arena.size() - 1) << PAGE_BITS) + offset;
+        return address / ALIGNMENT + 1;
+    }
+
+    @Override
+    public void addWord(byte[] word, int length) {
+        assert word != null : "Violation of: word is not null";
+        assert length <= PAGE_SIZE - ENTRY_HEADER
+                : "Violation of: length fits in a page";
+        int h = Utf8WordCounter.hash(word, 0, length);
+        long slot = this.find(h, word, length);
+        long entry = slotEntry(this.index, slot);
+        if (entry != 0) {
+            ByteBuffer page = this.page(entry);
+            int offset = offset(entry);
+            page.putInt(offset, page.getInt(offset) + 1);
+        } else {
+            if (this.size == Integer.MAX_VALUE) {
+                throw new IllegalStateException(
+                        "more than " + Integer.MAX_VALUE + " distinct words");
+            }
+            setSlot(this.index, slot, h, this.append(word, length));
+            this.size++;
+            if ((long) this.size * 2 > this.slots) {
+                this.growIndex();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of distinct words.
+     *
+     * @return the number of distinct words
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the {@code n}th largest count, or 0 if there are fewer than
+     * {@code n} words. No word is decoded.
+     *
+     * @param n
+     *            the rank of the count
+     * @return the nth largest count
+     * @requires n > 0
+     */
+    public int nthLargestCount(int n) {
+        assert n > 0 : "Violation of: n > 0";
+        LargestCounts largest = new LargestCounts(n);
+        for (ByteBuffer page : this.pages()) {
+            int offset = 0;
+            while (offset < page.limit()) {
+                largest.offer(page.getInt(offset));
+                int length = page.getInt(offset + Integer.BYTES);
+                offset += (ENTRY_HEADER + length + ALIGNMENT - 1) & -ALIGNMENT;
+            }
+        }
+        return largest.nth();
+    }
+
+    /**
+     * Returns views of the used part of every arena page.
+     *
+     * @return the arena pages, each limited to its entries
+     */
+    private List<ByteBuffer> pages() {
+        List<ByteBuffer> pages = new ArrayList<>();
+        for (ByteBuffer page : this.arena) {
+            pages.add(page.duplicate().order(ByteOrder.nativeOrder()));
+        }
+        if (!pages.isEmpty()) {
+            pages.get(pages.size() - 1).limit(this.arenaUsed);
+        }
+        return pages;
+    }
+
+    /**
+     * Passes every word whose count is at least {@code minCount}, decoded
+     * from UTF-8, and its count to {@code action}, in the order the words were
+     * first added. Words with smaller counts are skipped without being
+     * decoded.
+     *
+     * @param minCount
+     *            the smallest count passed on
+     * @param action
+     *            the receiver of the words and counts
+     */
+    public void forEach(int minCount, ObjIntConsumer<String> action) {
+        assert action != null : "Violation of: action is not null";
+        for (ByteBuffer page : this.pages()) {
+            int offset = 0;
+            while (offset < page.limit()) {
+                int count = page.getInt(offset);
+                int length = page.getInt(offset + Integer.BYTES);
+                if (count >= minCount) {
+                    if (length > this.scratch.length) {
+                        this.scratch = new byte[length];
+                    }
+                    page.get(offset + ENTRY_HEADER, this.scratch, 0, length);
+                    action.accept(new String(this.scratch, 0, length,
+                            StandardCharsets.UTF_8), count);
+                }
+                offset += (ENTRY_HEADER + length + ALIGNMENT - 1) & -ALIGNMENT;
+            }
+        }
+    }
+
+}
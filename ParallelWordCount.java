@@ -0,0 +1,371 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+
+/**
+ * Counts the words of one large UTF-8 file on a {@code ForkJoinPool}. The file
+ * is cut into byte ranges whose boundaries fall just after a separator, so no
+ * word is split between ranges; each range is memory-mapped, tokenized and
+ * counted by a worker into a counter of its own, and the counters are merged
+ * pairwise as the fork/join tree completes. The counts are exactly the ones a
+ * sequential pass over the file would produce.
+ *
+ * @author Julia Pittner
+ */
+public final class ParallelWordCount {
+
+    /**
+     * Smallest range worth giving to a worker.
+     */
+    private static final long MIN_RANGE = 1L << 20;
+
+    /**
+     * Number of ranges per worker, so that workers that finish early can
+     * steal more.
+     */
+    private static final int RANGES_PER_WORKER = 4;
+
+    /**
+     * Number of bytes read at a time while looking for a separator.
+     */
+    private static final int PROBE_SIZE = 1 << 12;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private ParallelWordCount() {
+    }
+
+    /**
+     * Returns the first position {@code p} in {@code [position, end]} that is
+     * {@code end} or just after a separator byte.
+     *
+     * @param channel
+     *            the file
+     * @param separators
+     *            the classifier for separator characters
+     * @param position
+     *            where to start looking
+     * @param end
+     *            the end of the file
+     * @return the aligned position
+     * @throws IOException
+     *             if reading fails
+     */
+    private static long alignToSeparator(FileChannel channel,
+            SeparatorClassifier separators, long position, long end)
+            throws IOException {
+        ByteBuffer probe = ByteBuffer.allocate(PROBE_SIZE);
+        long p = position;
+        boolean aligned = p == 0 || p >= end;
+        if (!aligned) {
+            /*
+             * Start at p - 1, since p is aligned if the byte before it is a
+             * separator.
+             */
+            p--;
+        }
+        while (!aligned) {
+            probe.clear();
+            int read = channel.read(probe, p);
+            if (read <= 0) {
+                p = end;
+                aligned = true;
+            }
+            for (int i = 0; !aligned && i < read; i++) {
+                byte b = probe.get(i);
+                p++;
+                aligned = b >= 0 && separators.isSeparator((char) b);
+            }
+            aligned = aligned || p >= end;
+        }
+        return Math.min(p, end);
+    }
+
+    /**
+     * Cuts {@code channel} into about {@code ranges} ranges that each start
+     * just after a separator byte.
+     *
+     * @param channel
+     *            the file
+     * @param separators
+     *            the classifier for separator characters
+     * @param ranges
+     *            the number of ranges wanted
+     * @return the boundaries: range {@code i} is
+     *         {@code [bounds[i], bounds[i + 1])}
+     * @throws IOException
+     *             if reading fails
+     */
+    static long[] rangeBounds(FileChannel channel,
+            SeparatorClassifier separators, int ranges) throws IOException {
+        long size = channel.size();
+        long rangeSize = Math.max(MIN_RANGE, (size + ranges - 1) / ranges);
+        int count = (int) Math.max(1, (size + rangeSize - 1) / rangeSize);
+        long[] bounds = new long[count + 1];
+        for (int i = 1; i < count; i++) {
+            bounds[i] = alignToSeparator(channel, separators,
+                    Math.max(bounds[i - 1], i * rangeSize), size);
+        }
+        bounds[count] = size;
+        return bounds;
+    }
+
+    /**
+     * Counts the words of the UTF-8 file {@code channel} on {@code pool}.
+     *
+     * @param channel
+     *            the file
+     * @param separators
+     *            the classifier for separator characters; must be ASCII
+     * @param lowerCase
+     *            whether to lowercase words
+     * @param pool
+     *            the pool to count on
+     * @return the words of the file and their counts
+     * @throws IOException
+     *             if reading or mapping fails
+     */
+    public static Utf8WordCounter count(FileChannel channel,
+            SeparatorClassifier separators, boolean lowerCase,
+            ForkJoinPool pool) throws IOException {
+        return count(channel, separators, lowerCase, pool,
+                Utf8WordCounter::new, ParallelWordCount::merge);
+    }
+
+    /**
+     * Counts the words of the UTF-8 file {@code channel} on {@code pool} into
+     * sinks made by {@code newSink}, one per range, and combines them with
+     * {@code merge} as the fork/join tree completes.
+     *
+     * @param <S>
+     *            the type of sink
+     * @param channel
+     *            the file
+     * @param separators
+     *            the classifier for separator characters; must be ASCII
+     * @param lowerCase
+     *            whether to lowercase words
+     * @param pool
+     *            the pool to count on
+     * @param newSink
+     *            makes an empty sink
+     * @param merge
+     *            combines two sinks, either of which it may reuse
+     * @return the combined sink of all ranges
+     * @throws IOException
+     *             if reading or mapping fails
+     */
+    public static <S extends Utf8WordSink> S count(FileChannel channel,
+            SeparatorClassifier separators, boolean lowerCase,
+            ForkJoinPool pool, Supplier<S> newSink, BinaryOperator<S> merge)
+            throws IOException {
+        assert channel != null : "Violation of: channel is not null";
+        assert separators != null : "Violation of: separators is not null";
+        assert pool != null : "Violation of: pool is not null";
+        assert newSink != null : "Violation of: newSink is not null";
+        assert merge != null : "Violation of: merge is not null";
+        long[] bounds = rangeBounds(channel, separators,
+                pool.getParallelism() * RANGES_PER_WORKER);
+        try {
+            return pool.invoke(new CountTask<>(channel, separators, lowerCase,
+                    newSink, merge, bounds, 0, bounds.length - 1));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Passes every word of the UTF-8 file {@code channel} to {@code sink},
+     * tokenizing the ranges of the file on {@code pool} at once. Unlike
+     * {@code count}, the workers share one sink, so it must be safe to call
+     * from several threads; the words reach it as UTF-8 bytes, and no
+     * {@code String} is made for them here.
+     *
+     * @param channel
+     *            the file
+     * @param separators
+     *            the classifier for separator characters; must be ASCII
+     * @param lowerCase
+     *            whether to lowercase words
+     * @param pool
+     *            the pool to tokenize on
+     * @param sink
+     *            the receiver of the words, called concurrently
+     * @throws IOException
+     *             if reading or mapping fails
+     */
+    public static void forEachWord(FileChannel channel,
+            SeparatorClassifier separators, boolean lowerCase,
+            ForkJoinPool pool, Utf8WordSink sink) throws IOException {
+        assert channel != null : "Violation of: channel is not null";
+        assert separators != null : "Violation of: separators is not null";
+        assert pool != null : "Violation of: pool is not null";
+        assert sink != null : "Violation of: sink is not null";
+        long[] bounds = rangeBounds(channel, separators,
+                pool.getParallelism() * RANGES_PER_WORKER);
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int i = 0; i + 1 < bounds.length; i++) {
+            long start = bounds[i];
+            long end = bounds[i + 1];
+            tasks.add(pool.submit(() -> {
+                Utf8Tokenizer tokenizer = new Utf8Tokenizer(separators,
+                        lowerCase, sink);
+                try {
+                    MappedFileInput.feed(channel, start, end, tokenizer);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                tokenizer.finish();
+            }));
+        }
+        CorpusWordCount.waitFor(tasks);
+    }
+
+    /**
+     * Returns the union of two counters, reusing the larger one.
+     *
+     * @param left
+     *            a counter
+     * @param right
+     *            a counter
+     * @return the merged counter
+     */
+    static Utf8WordCounter merge(Utf8WordCounter left,
+            Utf8WordCounter right) {
+        Utf8WordCounter result;
+        if (left.size() >= right.size()) {
+            left.addAll(right);
+            result = left;
+        } else {
+            right.addAll(left);
+            result = right;
+        }
+        return result;
+    }
+
+    /**
+     * Counts the ranges {@code [from, to)} of the file, splitting in half
+     * until a single range is left.
+     */
+    private static final class CountTask<S extends Utf8WordSink>
+            extends RecursiveTask<S> {
+
+        /**
+         * Serialization id; tasks are never serialized.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The file.
+         */
+        private final transient FileChannel channel;
+
+        /**
+         * The classifier for separator characters.
+         */
+        private final transient SeparatorClassifier separators;
+
+        /**
+         * Whether to lowercase words.
+         */
+        private final boolean lowerCase;
+
+        /**
+         * Makes an empty sink.
+         */
+        private final transient Supplier<S> newSink;
+
+        /**
+         * Combines two sinks.
+         */
+        private final transient BinaryOperator<S> merge;
+
+        /**
+         * The range boundaries.
+         */
+        private final long[] bounds;
+
+        /**
+         * First range of this task.
+         */
+        private final int from;
+
+        /**
+         * End (exclusive) of the ranges of this task.
+         */
+        private final int to;
+
+        /**
+         * Creates a task for ranges {@code [from, to)}.
+         *
+         * @param channel
+         *            the file
+         * @param separators
+         *            the classifier for separator characters
+         * @param lowerCase
+         *            whether to lowercase words
+         * @param newSink
+         *            makes an empty sink
+         * @param merge
+         *            combines two sinks
+         * @param bounds
+         *            the range boundaries
+         * @param from
+         *            the first range
+         * @param to
+         *            the end (exclusive) of the ranges
+         */
+        CountTask(FileChannel channel, SeparatorClassifier separators,
+                boolean lowerCase, Supplier<S> newSink,
+                BinaryOperator<S> merge, long[] bounds, int from, int to) {
+            this.channel = channel;
+            this.separators = separators;
+            this.lowerCase = lowerCase;
+            this.newSink = newSink;
+            this.merge = merge;
+            this.bounds = bounds;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected S compute() {
+            S result;
+            if (this.to - this.from == 1) {
+                result = this.newSink.get();
+                Utf8Tokenizer tokenizer = new Utf8Tokenizer(this.separators,
+                        this.lowerCase, result);
+                try {
+                    MappedFileInput.feed(this.channel,
+                            this.bounds[this.from], this.bounds[this.to],
+                            tokenizer);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                tokenizer.finish();
+            } else {
+                int middle = (this.from + this.to) >>> 1;
+                CountTask<S> left = new CountTask<>(this.channel,
+                        this.separators, this.lowerCase, this.newSink,
+                        this.merge, this.bounds, this.from, middle);
+                CountTask<S> right = new CountTask<>(this.channel,
+                        this.separators, this.lowerCase, this.newSink,
+                        this.merge, this.bounds, middle, this.to);
+                left.fork();
+                result = this.merge.apply(right.compute(), left.join());
+            }
+            return result;
+        }
+
+    }
+
+}
@@ -0,0 +1,478 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Counts the words of a UTF-8 stream in three overlapping stages: one thread
+ * reads the stream into chunks, {@code tokenizers} threads split chunks into
+ * words, and {@code counters} threads count the words. Each word goes to the
+ * counter chosen by its hash, so every counter owns a disjoint part of the
+ * vocabulary and their counts are simply put together at the end.
+ *
+ * <p>
+ * The stages are connected by bounded queues, and every chunk and every word
+ * batch comes from a fixed pool allocated up front and is handed back when
+ * used. A stage that runs ahead waits for an empty chunk or batch, so the
+ * reader can never get more than the pool ahead of the slowest stage and
+ * memory stays bounded however large the input.
+ *
+ * <p>
+ * The reader cuts each chunk just after its last separator byte and carries
+ * the rest over to the next chunk, so no word is split between chunks and the
+ * chunks can be tokenized in any order.
+ *
+ * @author Julia Pittner
+ */
+public final class PipelinedWordCount {
+
+    /**
+     * Default chunk size in bytes.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 16;
+
+    /**
+     * Chunks or batches in flight per consuming thread, beyond the ones being
+     * worked on.
+     */
+    private static final int DEPTH = 4;
+
+    /**
+     * Bytes of words a batch holds before it is handed to its counter.
+     */
+    private static final int BATCH_BYTES = 1 << 14;
+
+    /**
+     * Words a batch holds before it is handed to its counter.
+     */
+    private static final int BATCH_WORDS = 1 << 11;
+
+    /**
+     * Marks the end of the chunks.
+     */
+    private static final Chunk END_OF_CHUNKS = new Chunk(0);
+
+    /**
+     * Marks the end of the batches of one tokenizer.
+     */
+    private static final WordBatch END_OF_BATCHES = new WordBatch();
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private PipelinedWordCount() {
+    }
+
+    /**
+     * Counts the words of the UTF-8 stream {@code in}.
+     *
+     * @param in
+     *            the stream
+     * @param separators
+     *            the classifier for separator characters; must be ASCII
+     * @param lowerCase
+     *            whether to lowercase words
+     * @param tokenizers
+     *            the number of tokenizing threads
+     * @param counters
+     *            the number of counting threads
+     * @param chunkSize
+     *            the size of a chunk in bytes
+     * @return the words of the stream and their counts
+     * @throws IOException
+     *             if reading fails
+     * @requires tokenizers > 0 and counters > 0 and chunkSize > 0
+     */
+    public static Utf8WordCounter count(InputStream in,
+            SeparatorClassifier separators, boolean lowerCase, int tokenizers,
+            int counters, int chunkSize) throws IOException {
+        assert in != null : "Violation of: in is not null";
+        assert separators != null : "Violation of: separators is not null";
+        assert tokenizers > 0 : "Violation of: tokenizers > 0";
+        assert counters > 0 : "Violation of: counters > 0";
+        assert chunkSize > 0 : "Violation of: chunkSize > 0";
+
+        int chunks = tokenizers * (DEPTH + 1);
+        BlockingQueue<Chunk> freeChunks = new ArrayBlockingQueue<>(chunks);
+        for (int i = 0; i < chunks; i++) {
+            freeChunks.add(new Chunk(chunkSize));
+        }
+        BlockingQueue<Chunk> fullChunks = new ArrayBlockingQueue<>(
+                chunks + tokenizers);
+
+        /*
+         * Every tokenizer holds one open batch per counter; the rest are in
+         * the queues or being counted.
+         */
+        int batches = counters * (tokenizers + DEPTH + 1);
+        BlockingQueue<WordBatch> freeBatches = new ArrayBlockingQueue<>(
+                batches);
+        for (int i = 0; i < batches; i++) {
+            freeBatches.add(new WordBatch());
+        }
+        List<BlockingQueue<WordBatch>> fullBatches = new ArrayList<>();
+        for (int i = 0; i < counters; i++) {
+            fullBatches.add(new ArrayBlockingQueue<>(batches + tokenizers));
+        }
+
+        Utf8WordCounter[] results = new Utf8WordCounter[counters];
+        ExecutorService executor = Executors
+                .newFixedThreadPool(1 + tokenizers + counters);
+        CompletionService<Void> stages = new ExecutorCompletionService<>(
+                executor);
+        try {
+            stages.submit(() -> {
+                read(in, separators, freeChunks, fullChunks, tokenizers);
+                return null;
+            });
+            for (int i = 0; i < tokenizers; i++) {
+                stages.submit(() -> {
+                    tokenize(separators, lowerCase, freeChunks, fullChunks,
+                            freeBatches, fullBatches);
+                    return null;
+                });
+            }
+            for (int i = 0; i < counters; i++) {
+                int id = i;
+                stages.submit(() -> {
+                    results[id] = countBatches(freeBatches,
+                            fullBatches.get(id), tokenizers);
+                    return null;
+                });
+            }
+            waitForStages(stages, 1 + tokenizers + counters);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Utf8WordCounter result = results[0];
+        for (int i = 1; i < counters; i++) {
+            result = ParallelWordCount.merge(result, results[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Waits for {@code count} stages to finish, in whatever order they do, and
+     * rethrows the first failure right away so the caller can stop the rest.
+     *
+     * @param stages
+     *            the running stages
+     * @param count
+     *            the number of stages
+     * @throws IOException
+     *             if a stage failed to read its input or was interrupted
+     */
+    private static void waitForStages(CompletionService<Void> stages,
+            int count) throws IOException {
+        try {
+            for (int i = 0; i < count; i++) {
+                stages.take().get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while counting", e);
+        }
+    }
+
+    /**
+     * The reader stage: fills chunks from {@code in}, cut just after a
+     * separator, and passes them on, then sends one end marker per tokenizer.
+     *
+     * @param in
+     *            the stream
+     * @param separators
+     *            the classifier for separator characters
+     * @param freeChunks
+     *            chunks ready to be filled
+     * @param fullChunks
+     *            chunks ready to be tokenized
+     * @param tokenizers
+     *            the number of tokenizers
+     * @throws InterruptedException
+     *             if the pipeline is stopped
+     */
+    private static void read(InputStream in, SeparatorClassifier separators,
+            BlockingQueue<Chunk> freeChunks, BlockingQueue<Chunk> fullChunks,
+            int tokenizers) throws InterruptedException {
+        byte[] carry = new byte[0];
+        int carryLength = 0;
+        boolean eof = false;
+        while (!eof) {
+            Chunk chunk = freeChunks.take();
+            if (chunk.data.length < carryLength * 2) {
+                chunk.data = new byte[carryLength * 2];
+            }
+            System.arraycopy(carry, 0, chunk.data, 0, carryLength);
+            int filled = carryLength;
+            int cut = -1;
+            while (!eof && cut < 0) {
+                while (!eof && filled < chunk.data.length) {
+                    int read;
+                    try {
+                        read = in.read(chunk.data, filled,
+                                chunk.data.length - filled);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    eof = read < 0;
+                    filled += Math.max(read, 0);
+                }
+                cut = lastSeparatorEnd(chunk.data, filled, separators);
+                if (!eof && cut < 0) {
+                    /*
+                     * A word longer than the chunk: make room for more of it.
+                     */
+                    chunk.data = Arrays.copyOf(chunk.data,
+                            chunk.data.length * 2);
+                }
+            }
+            if (eof) {
+                cut = filled;
+            }
+            carryLength = filled - cut;
+            if (carry.length < carryLength) {
+                carry = new byte[carryLength];
+            }
+            System.arraycopy(chunk.data, cut, carry, 0, carryLength);
+            chunk.length = cut;
+            fullChunks.put(chunk);
+        }
+        for (int i = 0; i < tokenizers; i++) {
+            fullChunks.put(END_OF_CHUNKS);
+        }
+    }
+
+    /**
+     * Returns the position just after the last separator byte in
+     * {@code data[0, length)}, or -1 if there is none.
+     *
+     * @param data
+     *            the bytes
+     * @param length
+     *            the number of bytes to look at
+     * @param separators
+     *            the classifier for separator characters
+     * @return the position after the last separator, or -1
+     */
+    private static int lastSeparatorEnd(byte[] data, int length,
+            SeparatorClassifier separators) {
+        int i = length - 1;
+        while (i >= 0 && !(data[i] >= 0
+                && separators.isSeparator((char) data[i]))) {
+            i--;
+        }
+        int result = -1;
+        if (i >= 0) {
+            result = i + 1;
+        }
+        return result;
+    }
+
+    /**
+     * A tokenizer stage: splits chunks into words and sends each word, in
+     * batches, to the counter its hash picks; when the chunks end, flushes
+     * its batches and sends an end marker to every counter.
+     *
+     * @param separators
+     *            the classifier for separator characters
+     * @param lowerCase
+     *            whether to lowercase words
+     * @param freeChunks
+     *            chunks ready to be filled
+     * @param fullChunks
+     *            chunks ready to be tokenized
+     * @param freeBatches
+     *            batches ready to be filled
+     * @param fullBatches
+     *            for each counter, batches ready to be counted
+     * @throws InterruptedException
+     *             if the pipeline is stopped
+     */
+    private static void tokenize(SeparatorClassifier separators,
+            boolean lowerCase, BlockingQueue<Chunk> freeChunks,
+            BlockingQueue<Chunk> fullChunks,
+            BlockingQueue<WordBatch> freeBatches,
+            List<BlockingQueue<WordBatch>> fullBatches)
+            throws InterruptedException {
+        int counters = fullBatches.size();
+        WordBatch[] open = new WordBatch[counters];
+        for (int i = 0; i < counters; i++) {
+            open[i] = freeBatches.take();
+        }
+        Utf8WordSink sink = (word, length) -> {
+            int h = Utf8WordCounter.hash(word, 0, length);
+            int target = (int) ((Integer.toUnsignedLong(h)
+                    * counters) >>> Integer.SIZE);
+            if (!open[target].fits(length)) {
+                try {
+                    fullBatches.get(target).put(open[target]);
+                    open[target] = freeBatches.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(e);
+                }
+            }
+            open[target].add(word, length);
+        };
+        Utf8Tokenizer tokenizer = new Utf8Tokenizer(separators, lowerCase,
+                sink);
+        Chunk chunk = fullChunks.take();
+        while (chunk != END_OF_CHUNKS) {
+            tokenizer.feed(ByteBuffer.wrap(chunk.data, 0, chunk.length));
+            tokenizer.finish();
+            freeChunks.put(chunk);
+            chunk = fullChunks.take();
+        }
+        for (int i = 0; i < counters; i++) {
+            fullBatches.get(i).put(open[i]);
+            fullBatches.get(i).put(END_OF_BATCHES);
+        }
+    }
+
+    /**
+     * A counter stage: counts the words of its batches until every tokenizer
+     * has sent its end marker.
+     *
+     * @param freeBatches
+     *            batches ready to be filled
+     * @param batches
+     *            the batches for this counter
+     * @param tokenizers
+     *            the number of tokenizers
+     * @return the words counted and their counts
+     * @throws InterruptedException
+     *             if the pipeline is stopped
+     */
+    private static Utf8WordCounter countBatches(
+            BlockingQueue<WordBatch> freeBatches,
+            BlockingQueue<WordBatch> batches, int tokenizers)
+            throws InterruptedException {
+        Utf8WordCounter counter = new Utf8WordCounter();
+        int ended = 0;
+        while (ended < tokenizers) {
+            WordBatch batch = batches.take();
+            if (batch == END_OF_BATCHES) {
+                ended++;
+            } else {
+                int start = 0;
+                for (int i = 0; i < batch.words; i++) {
+                    counter.add(batch.bytes, start, batch.ends[i] - start, 1);
+                    start = batch.ends[i];
+                }
+                batch.clear();
+                freeBatches.put(batch);
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * A buffer of input bytes.
+     */
+    private static final class Chunk {
+
+        /**
+         * The bytes; may grow to hold a long word.
+         */
+        private byte[] data;
+
+        /**
+         * Number of bytes of {@code data} to tokenize.
+         */
+        private int length;
+
+        /**
+         * Creates a chunk of {@code size} bytes.
+         *
+         * @param size
+         *            the size in bytes
+         */
+        Chunk(int size) {
+            this.data = new byte[size];
+        }
+
+    }
+
+    /**
+     * Words stored back to back, on their way from a tokenizer to a counter.
+     */
+    private static final class WordBatch {
+
+        /**
+         * The bytes of the words; may grow to hold a long word.
+         */
+        private byte[] bytes = new byte[BATCH_BYTES];
+
+        /**
+         * The end of each word in {@code bytes}.
+         */
+        private final int[] ends = new int[BATCH_WORDS];
+
+        /**
+         * Number of words.
+         */
+        private int words;
+
+        /**
+         * Number of bytes used.
+         */
+        private int used;
+
+        /**
+         * Reports whether a word of {@code length} bytes can be added; always
+         * true of an empty batch.
+         *
+         * @param length
+         *            the length of the word
+         * @return true iff the word fits
+         */
+        boolean fits(int length) {
+            return this.words == 0 || (this.words < this.ends.length
+                    && this.used + length <= this.bytes.length);
+        }
+
+        /**
+         * Adds {@code word[0, length)}.
+         *
+         * @param word
+         *            the buffer holding the word
+         * @param length
+         *            the length of the word
+         */
+        void add(byte[] word, int length) {
+            if (this.used + length > this.bytes.length) {
+                this.bytes = Arrays.copyOf(this.bytes, this.used + length);
+            }
+            System.arraycopy(word, 0, this.bytes, this.used, length);
+            this.used += length;
+            this.ends[this.words] = this.used;
+            this.words++;
+        }
+
+        /**
+         * Empties this batch.
+         */
+        void clear() {
+            this.words = 0;
+            this.used = 0;
+        }
+
+    }
+
+}
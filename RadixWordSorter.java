@@ -0,0 +1,288 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import components.queue.Queue;
+
+/**
+ * Sorts a queue of words in case-insensitive alphabetical order with a radix
+ * sort instead of comparisons on whole {@code String}s. Each word is lower
+ * cased once; the words are then distributed into buckets on the first
+ * character of their lower case, and each bucket is sorted with a multikey
+ * (three-way radix) quicksort that partitions on one character at a time, so
+ * a shared prefix is looked at once per partitioning step rather than once
+ * per comparison.
+ *
+ * <p>
+ * The order is that of {@code o1.toLowerCase().compareTo(o2.toLowerCase())},
+ * with words that have the same lower case in {@code String.compareTo}
+ * order. The buckets are independent, so with more than one thread they are
+ * sorted in parallel on a work-stealing pool.
+ *
+ * @author Julia Pittner
+ */
+public final class RadixWordSorter {
+
+    /**
+     * Ranges at most this long are sorted by insertion.
+     */
+    private static final int INSERTION_THRESHOLD = 16;
+
+    /**
+     * Queues shorter than this are always sorted on one thread.
+     */
+    private static final int PARALLEL_THRESHOLD = 1 << 13;
+
+    /**
+     * Number of distinct values of a character.
+     */
+    private static final int ALPHABET = Character.MAX_VALUE + 1;
+
+    /**
+     * Number of threads the buckets are sorted on.
+     */
+    private final int threads;
+
+    /**
+     * Creates a sorter that sorts on {@code threads} threads.
+     *
+     * @param threads
+     *            the number of threads
+     * @requires threads > 0
+     */
+    public RadixWordSorter(int threads) {
+        assert threads > 0 : "Violation of: threads > 0";
+        this.threads = threads;
+    }
+
+    /**
+     * Returns character {@code d} of {@code key}, or -1 past its end.
+     *
+     * @param key
+     *            the key
+     * @param d
+     *            the index of the character
+     * @return the character, or -1
+     */
+    private static int charAt(String key, int d) {
+        int result = -1;
+        if (d < key.length()) {
+            result = key.charAt(d);
+        }
+        return result;
+    }
+
+    /**
+     * Swaps entries {@code i} and {@code j} of {@code keys} and
+     * {@code words}.
+     *
+     * @param keys
+     *            the lower-case keys
+     * @param words
+     *            the words
+     * @param i
+     *            an index
+     * @param j
+     *            an index
+     */
+    private static void swap(String[] keys, String[] words, int i, int j) {
+        String key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        String word = words[i];
+        words[i] = words[j];
+        words[j] = word;
+    }
+
+    /**
+     * Compares entries {@code i} and {@code j}, whose keys agree before
+     * character {@code d}.
+     *
+     * @param keys
+     *            the lower-case keys
+     * @param words
+     *            the words
+     * @param i
+     *            an index
+     * @param j
+     *            an index
+     * @param d
+     *            the first character that may differ
+     * @return negative, zero or positive as entry i sorts before, with or
+     *         after entry j
+     */
+    private static int compare(String[] keys, String[] words, int i, int j,
+            int d) {
+        String key1 = keys[i];
+        String key2 = keys[j];
+        int length = Math.min(key1.length(), key2.length());
+        int k = d;
+        while (k < length && key1.charAt(k) == key2.charAt(k)) {
+            k++;
+        }
+        int result;
+        if (k < length) {
+            result = key1.charAt(k) - key2.charAt(k);
+        } else {
+            result = key1.length() - key2.length();
+        }
+        if (result == 0) {
+            result = words[i].compareTo(words[j]);
+        }
+        return result;
+    }
+
+    /**
+     * Sorts entries {@code [low, high)}, whose keys agree before character
+     * {@code d}, by insertion.
+     *
+     * @param keys
+     *            the lower-case keys
+     * @param words
+     *            the words
+     * @param low
+     *            the start of the range
+     * @param high
+     *            the end (exclusive) of the range
+     * @param d
+     *            the first character that may differ
+     */
+    private static void insertionSort(String[] keys, String[] words, int low,
+            int high, int d) {
+        for (int i = low + 1; i < high; i++) {
+            int j = i;
+            while (j > low && compare(keys, words, j - 1, j, d) > 0) {
+                swap(keys, words, j - 1, j);
+                j--;
+            }
+        }
+    }
+
+    /**
+     * Sorts entries {@code [low, high)}, whose keys agree before character
+     * {@code d}, with a multikey quicksort.
+     *
+     * @param keys
+     *            the lower-case keys
+     * @param words
+     *            the words
+     * @param low
+     *            the start of the range
+     * @param high
+     *            the end (exclusive) of the range
+     * @param d
+     *            the first character that may differ
+     */
+    private static void multikeySort(String[] keys, String[] words, int low,
+            int high, int d) {
+        int lo = low;
+        int hi = high;
+        int depth = d;
+        boolean done = false;
+        while (!done && hi - lo > INSERTION_THRESHOLD) {
+            int a = charAt(keys[lo], depth);
+            int b = charAt(keys[(lo + hi) >>> 1], depth);
+            int c = charAt(keys[hi - 1], depth);
+            int pivot = Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+            int lt = lo;
+            int gt = hi - 1;
+            int i = lo;
+            while (i <= gt) {
+                int ch = charAt(keys[i], depth);
+                if (ch < pivot) {
+                    swap(keys, words, lt, i);
+                    lt++;
+                    i++;
+                } else if (ch > pivot) {
+                    swap(keys, words, i, gt);
+                    gt--;
+                } else {
+                    i++;
+                }
+            }
+            multikeySort(keys, words, lo, lt, depth);
+            multikeySort(keys, words, gt + 1, hi, depth);
+            if (pivot < 0) {
+                /*
+                 * The keys in the middle have all ended, so they are equal;
+                 * only the words themselves are left to order.
+                 */
+                Arrays.sort(words, lt, gt + 1);
+                done = true;
+            } else {
+                lo = lt;
+                hi = gt + 1;
+                depth++;
+            }
+        }
+        if (!done) {
+            insertionSort(keys, words, lo, hi, depth);
+        }
+    }
+
+    /**
+     * Sorts {@code words} in case-insensitive alphabetical order.
+     *
+     * @param words
+     *            the words to sort
+     * @updates words
+     * @ensures words = [#words in case-insensitive alphabetical order]
+     */
+    public void sort(Queue<String> words) {
+        assert words != null : "Violation of: words is not null";
+        int n = words.length();
+        String[] unsorted = new String[n];
+        String[] unsortedKeys = new String[n];
+        /*
+         * Bucket 0 is for empty keys, bucket c + 1 for keys starting with c.
+         */
+        int[] starts = new int[ALPHABET + 2];
+        for (int i = 0; i < n; i++) {
+            unsorted[i] = words.dequeue();
+            unsortedKeys[i] = unsorted[i].toLowerCase();
+            starts[charAt(unsortedKeys[i], 0) + 2]++;
+        }
+        for (int b = 1; b < starts.length; b++) {
+            starts[b] += starts[b - 1];
+        }
+        String[] sorted = new String[n];
+        String[] keys = new String[n];
+        int[] next = Arrays.copyOf(starts, ALPHABET + 1);
+        for (int i = 0; i < n; i++) {
+            int b = charAt(unsortedKeys[i], 0) + 1;
+            sorted[next[b]] = unsorted[i];
+            keys[next[b]] = unsortedKeys[i];
+            next[b]++;
+        }
+
+        List<ForkJoinTask<?>> buckets = new ArrayList<>();
+        for (int b = 0; b <= ALPHABET; b++) {
+            int low = starts[b];
+            int high = starts[b + 1];
+            if (high - low > 1) {
+                buckets.add(ForkJoinTask.adapt(
+                        () -> multikeySort(keys, sorted, low, high, 1)));
+            }
+        }
+        if (this.threads > 1 && n >= PARALLEL_THRESHOLD) {
+            ForkJoinPool pool = new ForkJoinPool(this.threads);
+            try {
+                pool.invoke(ForkJoinTask
+                        .adapt(() -> ForkJoinTask.invokeAll(buckets)));
+            } finally {
+                pool.shutdown();
+            }
+        } else {
+            for (ForkJoinTask<?> bucket : buckets) {
+                bucket.invoke();
+            }
+        }
+
+        for (String word : sorted) {
+            words.enqueue(word);
+        }
+    }
+
+}
@@ -0,0 +1,120 @@
+/**
+ * Compiled classifier for separator characters. Built once from the string of
+ * separators, it answers {@code isSeparator} with a bit test instead of a
+ * {@code Set<Character>} lookup, so no {@code Character} is boxed per call.
+ * ASCII characters are answered from two {@code long}s; every other
+ * {@code char} is answered from a bitmap covering the whole BMP.
+ *
+ * @author Julia Pittner
+ */
+public final class SeparatorClassifier {
+
+    /**
+     * Number of bits in a {@code long}, as a shift.
+     */
+    private static final int WORD_SHIFT = 6;
+
+    /**
+     * Number of {@code long}s needed for one bit per {@code char} value.
+     */
+    private static final int BITMAP_WORDS = (Character.MAX_VALUE
+            + 1) >>> WORD_SHIFT;
+
+    /**
+     * First non-ASCII {@code char}.
+     */
+    private static final int ASCII_LIMIT = 0x80;
+
+    /**
+     * Bits of {@code asciiHigh} for {@code 'A'..'Z'} and {@code 'a'..'z'}.
+     */
+    private static final long LETTER_BITS = 0x07FFFFFE07FFFFFEL;
+
+    /**
+     * Separator bits for {@code chars 0..63}.
+     */
+    private final long asciiLow;
+
+    /**
+     * Separator bits for {@code chars 64..127}.
+     */
+    private final long asciiHigh;
+
+    /**
+     * Separator bits for every {@code char}; {@code null} when all separators
+     * are ASCII.
+     */
+    private final long[] bitmap;
+
+    /**
+     * Builds a classifier for the characters in {@code str}.
+     *
+     * @param str
+     *            the separator characters; duplicates are ignored
+     * @ensures isSeparator(c) = c is in entries(str)
+     */
+    public SeparatorClassifier(String str) {
+        assert str != null : "Violation of: str is not null";
+        long low = 0;
+        long high = 0;
+        long[] bits = null;
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c < ASCII_LIMIT / 2) {
+                low |= 1L << c;
+            } else if (c < ASCII_LIMIT) {
+                high |= 1L << c;
+            } else {
+                if (bits == null) {
+                    bits = new long[BITMAP_WORDS];
+                }
+                bits[c >>> WORD_SHIFT] |= 1L << c;
+            }
+        }
+        this.asciiLow = low;
+        this.asciiHigh = high;
+        this.bitmap = bits;
+    }
+
+    /**
+     * Reports whether {@code c} is a separator.
+     *
+     * @param c
+     *            the character to classify
+     * @return true iff {@code c} is a separator
+     */
+    public boolean isSeparator(char c) {
+        boolean result;
+        if (c < ASCII_LIMIT / 2) {
+            result = ((this.asciiLow >>> c) & 1L) != 0;
+        } else if (c < ASCII_LIMIT) {
+            result = ((this.asciiHigh >>> c) & 1L) != 0;
+        } else {
+            result = this.bitmap != null
+                    && ((this.bitmap[c >>> WORD_SHIFT] >>> c) & 1L) != 0;
+        }
+        return result;
+    }
+
+    /**
+     * Reports whether every separator is an ASCII character. Only then can
+     * UTF-8 input be classified byte by byte, because every byte of a
+     * multi-byte UTF-8 sequence is outside the ASCII range.
+     *
+     * @return true iff every separator is ASCII
+     */
+    public boolean isAsciiOnly() {
+        return this.bitmap == null;
+    }
+
+    /**
+     * Reports whether any ASCII letter is a separator.
+     *
+     * @return true iff some {@code c} in {@code 'A'..'Z'} or {@code 'a'..'z'}
+     *         is a separator
+     */
+    public boolean separatesLetters() {
+        return (this.asciiHigh & LETTER_BITS) != 0;
+    }
+
+}
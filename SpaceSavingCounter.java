@@ -0,0 +1,204 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming heavy-hitters counter (Space-Saving) in fixed memory. At most
+ * {@code capacity} words are monitored, each with a count and an error. A new
+ * word, once all slots are taken, replaces the monitored word with the
+ * smallest count {@code min}, and starts at count {@code min + 1} with error
+ * {@code min}.
+ *
+ * <p>
+ * For every monitored word, {@code count - error <= true count <= count}, and
+ * any word whose true count exceeds the total number of words divided by
+ * {@code capacity} is monitored. Counters built over separate parts of the
+ * input can be merged, keeping both guarantees, so parts can be counted in
+ * parallel.
+ *
+ * @author Julia Pittner
+ */
+public final class SpaceSavingCounter implements Utf8WordSink {
+
+    /**
+     * The monitored words, on their counts.
+     */
+    private CandidateHeap monitored;
+
+    /**
+     * Total number of words counted.
+     */
+    private long total;
+
+    /**
+     * Receiver of a word with its count and error.
+     */
+    @FunctionalInterface
+    public interface BoundedCountConsumer {
+
+        /**
+         * Receives a word with its count and error: its true count is between
+         * {@code count - error} and {@code count}.
+         *
+         * @param word
+         *            the word
+         * @param count
+         *            the count, never below the true count
+         * @param error
+         *            the largest amount by which count may exceed the true
+         *            count
+         */
+        void accept(String word, int count, int error);
+
+    }
+
+    /**
+     * Creates an empty counter monitoring at most {@code capacity} words.
+     *
+     * @param capacity
+     *            the number of words monitored
+     * @requires capacity > 0
+     */
+    public SpaceSavingCounter(int capacity) {
+        assert capacity > 0 : "Violation of: capacity > 0";
+        this.monitored = new CandidateHeap(capacity);
+    }
+
+    @Override
+    public void addWord(byte[] word, int length) {
+        long fingerprint = CandidateHeap.fingerprint(word, length);
+        int position = this.monitored.position(fingerprint);
+        if (position >= 0) {
+            this.monitored.raiseCount(position,
+                    this.monitored.countAt(position) + 1);
+        } else if (this.monitored.size() < this.monitored.capacity()) {
+            this.monitored.insert(fingerprint, word, length, 1, 0);
+        } else {
+            int min = this.monitored.minCount();
+            this.monitored.replaceMin(fingerprint, word, length, min + 1,
+                    min);
+        }
+        this.total++;
+    }
+
+    /**
+     * Returns the count every word that is not monitored is treated as having:
+     * the smallest count if all slots are taken, 0 otherwise.
+     *
+     * @return the count of an unmonitored word
+     */
+    private int unmonitoredCount() {
+        int result = 0;
+        if (this.monitored.size() == this.monitored.capacity()) {
+            result = this.monitored.minCount();
+        }
+        return result;
+    }
+
+    /**
+     * Merges {@code other} into this, as if this had also counted the words
+     * {@code other} counted. A word's count and error are the sums of its
+     * counts and errors in the two counters, where a word one counter does not
+     * monitor counts, with an equal error, as that counter's smallest count;
+     * the {@code capacity} words with the largest merged counts are kept.
+     *
+     * @param other
+     *            the counter to merge in
+     * @updates this
+     * @requires other has the same capacity as this
+     */
+    public void addAll(SpaceSavingCounter other) {
+        assert other != null : "Violation of: other is not null";
+        assert other != this : "Violation of: other is not this";
+        CandidateHeap mine = this.monitored;
+        CandidateHeap theirs = other.monitored;
+        int myFloor = this.unmonitoredCount();
+        int theirFloor = other.unmonitoredCount();
+
+        /*
+         * Pair up the words both counters monitor.
+         */
+        Map<Long, Integer> theirPositions = new HashMap<>();
+        for (int i = 0; i < theirs.size(); i++) {
+            theirPositions.put(theirs.fingerprintAt(i), i);
+        }
+        List<long[]> merged = new ArrayList<>();
+        List<byte[]> mergedWords = new ArrayList<>();
+        for (int i = 0; i < mine.size(); i++) {
+            Integer j = theirPositions.remove(mine.fingerprintAt(i));
+            long count = mine.countAt(i);
+            long error = mine.errorAt(i);
+            if (j != null) {
+                count += theirs.countAt(j);
+                error += theirs.errorAt(j);
+            } else {
+                count += theirFloor;
+                error += theirFloor;
+            }
+            merged.add(new long[] { mine.fingerprintAt(i), count, error });
+            mergedWords.add(mine.wordAt(i));
+        }
+        for (int j : theirPositions.values()) {
+            merged.add(new long[] { theirs.fingerprintAt(j),
+                    theirs.countAt(j) + (long) myFloor,
+                    theirs.errorAt(j) + (long) myFloor });
+            mergedWords.add(theirs.wordAt(j));
+        }
+
+        /*
+         * Keep the largest merged counts; the heap drops the smallest.
+         */
+        CandidateHeap result = new CandidateHeap(mine.capacity());
+        for (int k = 0; k < merged.size(); k++) {
+            long[] entry = merged.get(k);
+            byte[] word = mergedWords.get(k);
+            if (result.size() < result.capacity()) {
+                result.insert(entry[0], word, word.length, (int) entry[1],
+                        (int) entry[2]);
+            } else if (entry[1] > result.minCount()) {
+                result.replaceMin(entry[0], word, word.length, (int) entry[1],
+                        (int) entry[2]);
+            }
+        }
+        this.monitored = result;
+        this.total += other.total;
+    }
+
+    /**
+     * Returns the number of monitored words.
+     *
+     * @return the number of monitored words
+     */
+    public int size() {
+        return this.monitored.size();
+    }
+
+    /**
+     * Returns the total number of words counted.
+     *
+     * @return the total number of words
+     */
+    public long total() {
+        return this.total;
+    }
+
+    /**
+     * Passes every monitored word, decoded from UTF-8, with its count and
+     * error to {@code action}, in no particular order.
+     *
+     * @param action
+     *            the receiver of the words, counts and errors
+     */
+    public void forEach(BoundedCountConsumer action) {
+        assert action != null : "Violation of: action is not null";
+        for (int i = 0; i < this.monitored.size(); i++) {
+            action.accept(
+                    new String(this.monitored.wordAt(i),
+                            StandardCharsets.UTF_8),
+                    this.monitored.countAt(i), this.monitored.errorAt(i));
+        }
+    }
+
+}
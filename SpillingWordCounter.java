@@ -0,0 +1,599 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Word counter for vocabularies that do not fit in memory. Words are counted
+ * in a {@code Utf8WordCounter} until it, together with what sorting its words
+ * will take, holds more than a memory budget; its words are then sorted and
+ * written with their counts to a run file, and counting starts over with an
+ * empty counter. At the end the runs, and what is still in memory, are merged
+ * with a k-way heap merge into one stream of distinct words in order, with
+ * their total counts, so at most one word per run is held during the merge.
+ *
+ * <p>
+ * Runs are kept in levels, as in a log-structured merge: spills go to level
+ * 0, and once a level has {@code MERGE_WIDTH} runs they are merged into one
+ * run on the next level. Every word is thus rewritten once per level, about
+ * log_{@code MERGE_WIDTH} of the number of spills times, rather than on every
+ * merge.
+ *
+ * <p>
+ * The order is any total order on words; when it ranks distinct words as
+ * equal, ties are broken with {@code String.compareTo} so that equal words
+ * are always adjacent in the merge.
+ *
+ * @author Julia Pittner
+ */
+public final class SpillingWordCounter implements Utf8WordSink, AutoCloseable {
+
+    /**
+     * Size of the buffer for reading and writing a run file.
+     */
+    private static final int RUN_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Number of distinct words an empty in-memory counter makes room for; it
+     * is small so that even a small budget holds many words per run.
+     */
+    private static final int INITIAL_WORDS = 16;
+
+    /**
+     * Number of runs merged at once: a level holding this many is merged
+     * into one run on the next level.
+     */
+    private static final int MERGE_WIDTH = 64;
+
+    /**
+     * Heap, in bytes beyond the word's characters, that sorting takes per
+     * word: the decoded {@code String}'s object and array headers, the
+     * reference to it, and the count, index and scratch {@code int}s.
+     */
+    private static final int SORT_BYTES_PER_WORD = 64;
+
+    /**
+     * Ranges of at most this many words are sorted by insertion.
+     */
+    private static final int INSERTION_THRESHOLD = 16;
+
+    /**
+     * Bytes per megabyte.
+     */
+    public static final long MEGABYTE = 1L << 20;
+
+    /**
+     * The order of the merged stream.
+     */
+    private final Comparator<String> order;
+
+    /**
+     * Heap, in bytes, the in-memory counter and its sort may use before it
+     * is spilled.
+     */
+    private final long memoryBudget;
+
+    /**
+     * The words counted since the last spill.
+     */
+    private Utf8WordCounter counter;
+
+    /**
+     * The run files written so far, by level; level {@code k + 1} runs are
+     * merged from {@code MERGE_WIDTH} level {@code k} runs.
+     */
+    private final List<List<Path>> levels = new ArrayList<>();
+
+    /**
+     * Creates an empty counter that spills when its words take more than
+     * {@code memoryBudget} bytes, and merges them in {@code order}.
+     *
+     * @param memoryBudget
+     *            the heap budget in bytes
+     * @param order
+     *            the order of the merged stream
+     * @requires memoryBudget > 0
+     */
+    public SpillingWordCounter(long memoryBudget, Comparator<String> order) {
+        assert memoryBudget > 0 : "Violation of: memoryBudget > 0";
+        assert order != null : "Violation of: order is not null";
+        this.memoryBudget = memoryBudget;
+        this.order = order.thenComparing(Comparator.naturalOrder());
+        this.counter = new Utf8WordCounter(INITIAL_WORDS);
+    }
+
+    /**
+     * Returns the heap the in-memory counter takes plus what decoding and
+     * sorting its words will take.
+     *
+     * @return the bytes needed to spill the in-memory counter
+     */
+    private long memoryNeeded() {
+        return this.counter.memoryUsed() + this.counter.keyBytes()
+                + (long) SORT_BYTES_PER_WORD * this.counter.size();
+    }
+
+    @Override
+    public void addWord(byte[] word, int length) {
+        this.counter.addWord(word, length);
+        if (this.memoryNeeded() > this.memoryBudget) {
+            try {
+                this.spill();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Sorts {@code indices[low, high)}, the numbers of words in
+     * {@code words}, so that the words they number are in order; a merge
+     * sort on plain {@code int}s, so no index is boxed.
+     *
+     * @param words
+     *            the words
+     * @param indices
+     *            the word numbers to sort
+     * @param scratch
+     *            room for merging, as long as {@code indices}
+     * @param low
+     *            the start of the range
+     * @param high
+     *            the end (exclusive) of the range
+     * @updates indices
+     */
+    private void sortIndices(String[] words, int[] indices, int[] scratch,
+            int low, int high) {
+        if (high - low <= INSERTION_THRESHOLD) {
+            for (int i = low + 1; i < high; i++) {
+                int index = indices[i];
+                int j = i;
+                while (j > low && this.order.compare(words[indices[j - 1]],
+                        words[index]) > 0) {
+                    indices[j] = indices[j - 1];
+                    j--;
+                }
+                indices[j] = index;
+            }
+        } else {
+            int middle = (low + high) >>> 1;
+            this.sortIndices(words, indices, scratch, low, middle);
+            this.sortIndices(words, indices, scratch, middle, high);
+            System.arraycopy(indices, low, scratch, low, high - low);
+            int left = low;
+            int right = middle;
+            for (int i = low; i < high; i++) {
+                if (right == high || (left < middle && this.order
+                        .compare(words[scratch[left]],
+                                words[scratch[right]]) <= 0)) {
+                    indices[i] = scratch[left];
+                    left++;
+                } else {
+                    indices[i] = scratch[right];
+                    right++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Decodes the words of the in-memory counter and returns them as a run in
+     * order.
+     *
+     * @return the words counted since the last spill, sorted
+     */
+    private MemoryRun sortedCounter() {
+        String[] words = new String[this.counter.size()];
+        int[] counts = new int[words.length];
+        int[] next = { 0 };
+        this.counter.forEach((word, count) -> {
+            words[next[0]] = word;
+            counts[next[0]] = count;
+            next[0]++;
+        });
+        int[] sorted = new int[words.length];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = i;
+        }
+        this.sortIndices(words, sorted, new int[sorted.length], 0,
+                sorted.length);
+        return new MemoryRun(words, counts, sorted);
+    }
+
+    /**
+     * Adds a new, empty run file on level {@code level}.
+     *
+     * @param level
+     *            the level
+     * @return the run file
+     * @throws IOException
+     *             if the file cannot be created
+     */
+    private Path newRun(int level) throws IOException {
+        while (this.levels.size() <= level) {
+            this.levels.add(new ArrayList<>());
+        }
+        Path run = Files.createTempFile("words", ".run");
+        this.levels.get(level).add(run);
+        return run;
+    }
+
+    /**
+     * Opens run file {@code run} for writing.
+     *
+     * @param run
+     *            the run file
+     * @return the writer
+     * @throws IOException
+     *             if the file cannot be opened
+     */
+    private static DataOutputStream newRunWriter(Path run)
+            throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(run), RUN_BUFFER_SIZE));
+    }
+
+    /**
+     * Writes one word and its count to a run file.
+     *
+     * @param out
+     *            the run file
+     * @param word
+     *            the word
+     * @param count
+     *            the count of the word
+     * @throws IOException
+     *             if writing fails
+     */
+    private static void writeEntry(DataOutputStream out, String word,
+            int count) throws IOException {
+        byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        out.writeInt(count);
+    }
+
+    /**
+     * Merges {@code sources} into the run file {@code run}.
+     *
+     * @param sources
+     *            the runs to merge
+     * @param run
+     *            the run file to write
+     * @throws IOException
+     *             if a run cannot be read or written
+     */
+    private void mergeInto(List<Run> sources, Path run) throws IOException {
+        try (DataOutputStream out = newRunWriter(run)) {
+            this.merge(sources, (word, count) -> {
+                try {
+                    writeEntry(out, word, count);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Merges the runs of level {@code level} into one run on the next level
+     * and deletes them.
+     *
+     * @param level
+     *            the level
+     * @throws IOException
+     *             if a run file cannot be read, written or deleted
+     */
+    private void mergeLevel(int level) throws IOException {
+        List<Path> merged = this.levels.get(level);
+        Path run = this.newRun(level + 1);
+        this.mergeInto(openRuns(merged), run);
+        for (Path path : merged) {
+            Files.delete(path);
+        }
+        merged.clear();
+    }
+
+    /**
+     * Writes the words counted since the last spill to a new run file on
+     * level 0, in order, and empties the in-memory counter. Every level that
+     * reaches {@code MERGE_WIDTH} runs is then merged into the next, so no
+     * more than that many run files are ever open at once.
+     *
+     * @throws IOException
+     *             if a run file cannot be written
+     */
+    private void spill() throws IOException {
+        List<Run> sources = new ArrayList<>();
+        sources.add(this.sortedCounter());
+        this.counter = new Utf8WordCounter(INITIAL_WORDS);
+        this.mergeInto(sources, this.newRun(0));
+        int level = 0;
+        while (level < this.levels.size()
+                && this.levels.get(level).size() >= MERGE_WIDTH) {
+            this.mergeLevel(level);
+            level++;
+        }
+    }
+
+    /**
+     * Returns the number of run files written so far and not yet merged.
+     *
+     * @return the number of runs
+     */
+    public int runs() {
+        int runs = 0;
+        for (List<Path> level : this.levels) {
+            runs += level.size();
+        }
+        return runs;
+    }
+
+    /**
+     * Opens the run files {@code paths} for reading.
+     *
+     * @param paths
+     *            the run files
+     * @return the runs
+     * @throws IOException
+     *             if a run file cannot be opened; those already opened are
+     *             closed
+     */
+    private static List<Run> openRuns(List<Path> paths) throws IOException {
+        List<Run> sources = new ArrayList<>();
+        try {
+            for (Path path : paths) {
+                sources.add(new FileRun(path));
+            }
+        } catch (IOException e) {
+            for (Run run : sources) {
+                run.close();
+            }
+            throw e;
+        }
+        return sources;
+    }
+
+    /**
+     * Merges the sorted {@code sources} and passes every distinct word and
+     * its total count to {@code action}, in order, then closes the sources.
+     *
+     * @param sources
+     *            the runs to merge
+     * @param action
+     *            the receiver of the words and counts
+     * @throws IOException
+     *             if a run cannot be read
+     */
+    private void merge(List<Run> sources, ObjIntConsumer<String> action)
+            throws IOException {
+        PriorityQueue<Run> heap = new PriorityQueue<>(
+                (r1, r2) -> this.order.compare(r1.word, r2.word));
+        try {
+            for (Run run : sources) {
+                if (run.advance()) {
+                    heap.add(run);
+                }
+            }
+            while (!heap.isEmpty()) {
+                Run first = heap.poll();
+                String word = first.word;
+                long total = first.count;
+                if (first.advance()) {
+                    heap.add(first);
+                }
+                while (!heap.isEmpty() && heap.peek().word.equals(word)) {
+                    Run same = heap.poll();
+                    total += same.count;
+                    if (same.advance()) {
+                        heap.add(same);
+                    }
+                }
+                action.accept(word, (int) Math.min(Integer.MAX_VALUE, total));
+            }
+        } finally {
+            for (Run run : sources) {
+                run.close();
+            }
+        }
+    }
+
+    /**
+     * Passes every distinct word and its total count to {@code action}, in
+     * order, merging the runs with what is still in memory. If there are
+     * {@code MERGE_WIDTH} runs or more, the lowest levels, which hold the
+     * smallest runs, are merged up first.
+     *
+     * @param action
+     *            the receiver of the words and counts
+     * @throws IOException
+     *             if a run file cannot be read
+     */
+    public void forEachSorted(ObjIntConsumer<String> action)
+            throws IOException {
+        assert action != null : "Violation of: action is not null";
+        int level = 0;
+        while (this.runs() >= MERGE_WIDTH) {
+            if (!this.levels.get(level).isEmpty()) {
+                this.mergeLevel(level);
+            }
+            level++;
+        }
+        List<Path> paths = new ArrayList<>();
+        for (List<Path> runs : this.levels) {
+            paths.addAll(runs);
+        }
+        List<Run> sources = openRuns(paths);
+        sources.add(this.sortedCounter());
+        this.merge(sources, action);
+    }
+
+    /**
+     * Deletes the run files.
+     *
+     * @throws IOException
+     *             if a run file cannot be deleted
+     */
+    @Override
+    public void close() throws IOException {
+        for (List<Path> level : this.levels) {
+            for (Path run : level) {
+                Files.deleteIfExists(run);
+            }
+        }
+        this.levels.clear();
+        this.counter = new Utf8WordCounter(INITIAL_WORDS);
+    }
+
+    /**
+     * A sorted sequence of words and counts being merged.
+     */
+    private abstract static class Run {
+
+        /**
+         * The current word.
+         */
+        protected String word;
+
+        /**
+         * The count of the current word.
+         */
+        protected int count;
+
+        /**
+         * Moves to the next word, if there is one.
+         *
+         * @return true iff there was a next word
+         * @throws IOException
+         *             if reading fails
+         */
+        abstract boolean advance() throws IOException;
+
+        /**
+         * Releases what this run holds open.
+         *
+         * @throws IOException
+         *             if closing fails
+         */
+        void close() throws IOException {
+        }
+
+    }
+
+    /**
+     * A run read back from its file.
+     */
+    private static final class FileRun extends Run {
+
+        /**
+         * The run file.
+         */
+        private final DataInputStream in;
+
+        /**
+         * Opens the run file {@code path}.
+         *
+         * @param path
+         *            the run file
+         * @throws IOException
+         *             if it cannot be opened
+         */
+        FileRun(Path path) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(
+                    Files.newInputStream(path), RUN_BUFFER_SIZE));
+        }
+
+        @Override
+        boolean advance() throws IOException {
+            boolean more = true;
+            int length = 0;
+            try {
+                length = this.in.readInt();
+            } catch (EOFException e) {
+                more = false;
+            }
+            if (more) {
+                byte[] bytes = new byte[length];
+                this.in.readFully(bytes);
+                this.word = new String(bytes, StandardCharsets.UTF_8);
+                this.count = this.in.readInt();
+            }
+            return more;
+        }
+
+        @Override
+        void close() throws IOException {
+            this.in.close();
+        }
+
+    }
+
+    /**
+     * Words held in memory, taken in sorted order.
+     */
+    private static final class MemoryRun extends Run {
+
+        /**
+         * The words.
+         */
+        private final String[] words;
+
+        /**
+         * The count of each word.
+         */
+        private final int[] counts;
+
+        /**
+         * The word numbers in sorted order.
+         */
+        private final int[] sorted;
+
+        /**
+         * Position in {@code sorted} of the next word.
+         */
+        private int next;
+
+        /**
+         * Creates a run over {@code words} and their {@code counts}, taken
+         * in the order of {@code sorted}.
+         *
+         * @param words
+         *            the words
+         * @param counts
+         *            the count of each word
+         * @param sorted
+         *            the word numbers in sorted order
+         */
+        MemoryRun(String[] words, int[] counts, int[] sorted) {
+            this.words = words;
+            this.counts = counts;
+            this.sorted = sorted;
+        }
+
+        @Override
+        boolean advance() {
+            boolean more = this.next < this.sorted.length;
+            if (more) {
+                this.word = this.words[this.sorted[this.next]];
+                this.count = this.counts[this.sorted[this.next]];
+                this.next++;
+            }
+            return more;
+        }
+
+    }
+
+}
@@ -1,17 +1,24 @@
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Set;
 import java.util.TreeMap;
-import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Creates a tag cloud for a given input file at a given output location. The
@@ -29,19 +36,41 @@ public final class TagCloudGeneratorStandard {
     }
 
     /**
-     * Compare values of Map.Pair<String, Integer>s.
+     * The characters that separate words.
      */
-    private static class IntegerValue
-            implements Comparator<Map.Entry<String, Integer>> {
-        @Override
-        public int compare(Map.Entry<String, Integer> o1,
-                Map.Entry<String, Integer> o2) {
-            return o1.getValue().compareTo(o2.getValue());
-        }
-    }
+    private static final String SEPARATORS = " \t\n\r,-.!?[]';:/()";
+
+    /**
+     * Largest number of distinct words the tables are sized for up front;
+     * small enough that the word table and a byte counter of this size both
+     * fit in a default heap.
+     */
+    private static final long MAX_PRESIZE = 1 << 24;
+
+    /**
+     * Default number of candidate words kept when counting approximately.
+     */
+    private static final int DEFAULT_CANDIDATES = 1000;
+
+    /**
+     * Default error factor of the approximate counts.
+     */
+    private static final double DEFAULT_EPSILON = 1e-4;
+
+    /**
+     * Default failure probability of the approximate counts.
+     */
+    private static final double DEFAULT_DELTA = 0.01;
+
+    /**
+     * Default table memory, in megabytes, before counts are spilled to disk.
+     */
+    private static final double DEFAULT_SPILL_MEGABYTES = 256;
 
     /**
-     * Reads a file into a map of form word -> word count.
+     * Reads a file into a table of form word -> word count. The file is
+     * tokenized in fixed-size chunks, so no line is ever held as a whole, and
+     * ASCII words are counted straight from the chunk buffer.
      *
      * @param fileReader
      *            the input file
@@ -54,28 +83,347 @@ public final class TagCloudGeneratorStandard {
      * @ensures <pre> wordAndCount contains word -> frequency of word in file
      * </pre>
      */
-    private static void readInputFile(BufferedReader fileReader,
-            Map<String, Integer> wordAndCount) throws IOException {
+    private static void readInputFile(Reader fileReader,
+            WordCountTable wordAndCount) throws IOException {
 
         wordAndCount.clear();
-        Set<Character> separators = new HashSet<Character>();
-        generateElements(" \t\n\r,-.!?[]';:/()", separators);
-        String line = fileReader.readLine();
-        while (line != null) {
-            int index = 0;
-            while (index < line.length()) {
-                String word = nextWordOrSeparator(line, index, separators);
-                index += word.length();
-                //skip separators
-                if (!separators.contains(word.charAt(0))) {
-                    word = word.toLowerCase();
-                    addOrIncrement(word, wordAndCount);
-                }
+        SeparatorClassifier separators = new SeparatorClassifier(SEPARATORS);
+        CharTokenizer words = new CharTokenizer(fileReader, separators);
+        while (words.nextWord()) {
+            if (words.lowerCaseAscii()) {
+                wordAndCount.increment(words.wordBuffer(), words.wordStart(),
+                        words.wordEnd());
+            } else {
+                addOrIncrement(words.word().toLowerCase(), wordAndCount);
             }
-            line = fileReader.readLine();
         }
 
-        fileReader.close();
+        words.close();
+    }
+
+    /**
+     * Reads a UTF-8 file into a table of form word -> word count without
+     * decoding it to characters. Words are lowercased and counted as bytes,
+     * and only the distinct words are decoded into {@code wordAndCount}.
+     *
+     * @param fileStream
+     *            the input file
+     * @param wordAndCount
+     *            holds the words and word counts from the input file
+     * @param expectedWords
+     *            the number of distinct words to make room for
+     * @throws IOException
+     * @replaces wordAndCount
+     * @requires <pre> fileStream is UTF-8 text </pre>
+     * @ensures <pre> wordAndCount contains word -> frequency of word in file
+     * </pre>
+     */
+    private static void readInputFileUtf8(InputStream fileStream,
+            WordCountTable wordAndCount, int expectedWords)
+            throws IOException {
+
+        wordAndCount.clear();
+        Utf8WordCounter counter = new Utf8WordCounter(expectedWords);
+        Utf8Tokenizer words = new Utf8Tokenizer(
+                new SeparatorClassifier(SEPARATORS), true, counter);
+        words.readFrom(fileStream, Utf8Tokenizer.DEFAULT_BUFFER_SIZE);
+        /*
+         * Distinct byte sequences can decode to the same String when the
+         * input is not valid UTF-8, so counts are added rather than set.
+         */
+        counter.forEach(wordAndCount::add);
+
+        fileStream.close();
+    }
+
+    /**
+     * Estimates the number of distinct words in a UTF-8 file with a
+     * HyperLogLog pass over a memory mapping of it, holding none of the words.
+     *
+     * @param fileChannel
+     *            the input file
+     * @return the estimated number of distinct words
+     * @throws IOException
+     * @requires <pre> fileChannel is UTF-8 text </pre>
+     */
+    private static long estimateDistinctWords(FileChannel fileChannel)
+            throws IOException {
+
+        HyperLogLog distinct = new HyperLogLog();
+        MappedFileInput.feedAll(fileChannel, new Utf8Tokenizer(
+                new SeparatorClassifier(SEPARATORS), true, distinct));
+        return distinct.estimate();
+    }
+
+    /**
+     * Reads a UTF-8 stream into a table of form word -> estimated count in
+     * fixed memory: every word is counted in a Count-Min Sketch, and only the
+     * {@code candidates} words with the highest estimates are kept. The
+     * estimates are never below the true counts.
+     *
+     * @param input
+     *            the input stream
+     * @param wordAndCount
+     *            holds the candidate words and their estimated counts
+     * @param epsilon
+     *            the error factor of the sketch
+     * @param delta
+     *            the failure probability of the sketch
+     * @param candidates
+     *            the number of candidate words kept
+     * @return a sentence stating the error bound of the estimates
+     * @throws IOException
+     * @replaces wordAndCount
+     * @requires <pre> input is UTF-8 text, 0 < epsilon < 1, 0 < delta < 1 and
+     * candidates > 0 </pre>
+     * @ensures <pre> wordAndCount contains word -> estimated frequency of word
+     * in input for the candidate words </pre>
+     */
+    private static String readInputFileApproximate(InputStream input,
+            WordCountTable wordAndCount, double epsilon, double delta,
+            int candidates) throws IOException {
+
+        wordAndCount.clear();
+        ApproximateWordCounter counter = new ApproximateWordCounter(epsilon,
+                delta, candidates);
+        Utf8Tokenizer words = new Utf8Tokenizer(
+                new SeparatorClassifier(SEPARATORS), true, counter);
+        words.readFrom(input, Utf8Tokenizer.DEFAULT_BUFFER_SIZE);
+        counter.forEach(wordAndCount::add);
+
+        CountMinSketch sketch = counter.sketch();
+        return "Counts are estimates from a Count-Min Sketch of "
+                + sketch.total() + " words (epsilon = " + sketch.epsilon()
+                + ", delta = " + sketch.delta()
+                + "): each count is at least the true count and, with "
+                + "probability " + (1 - sketch.delta())
+                + ", exceeds it by at most " + sketch.errorBound() + ".";
+    }
+
+    /**
+     * Reads a UTF-8 file into a table of form word -> word count with
+     * asynchronous read-ahead: the next reads are already in flight while the
+     * current buffer is tokenized.
+     *
+     * @param fileName
+     *            the name of the input file
+     * @param wordAndCount
+     *            holds the words and word counts from the input file
+     * @param expectedWords
+     *            the number of distinct words to make room for
+     * @param bufferSize
+     *            the size of each read in bytes
+     * @param depth
+     *            the number of buffers, the one being tokenized included
+     * @throws IOException
+     * @replaces wordAndCount
+     * @requires <pre> the file is UTF-8 text, bufferSize > 0 and depth > 0
+     * </pre>
+     * @ensures <pre> wordAndCount contains word -> frequency of word in file
+     * </pre>
+     */
+    private static void readInputFileAsync(String fileName,
+            WordCountTable wordAndCount, int expectedWords, int bufferSize,
+            int depth) throws IOException {
+
+        wordAndCount.clear();
+        Utf8WordCounter counter = new Utf8WordCounter(expectedWords);
+        Utf8Tokenizer words = new Utf8Tokenizer(
+                new SeparatorClassifier(SEPARATORS), true, counter);
+        try (AsynchronousFileChannel channel = AsynchronousFileChannel
+                .open(Paths.get(fileName), StandardOpenOption.READ)) {
+            AsyncFileInput.feedAll(channel, words, bufferSize, depth);
+        }
+        counter.forEach(wordAndCount::add);
+    }
+
+    /**
+     * Reads a UTF-8 file into a table of form word -> word count through a
+     * memory mapping, tokenizing the mapped bytes in place. Words are
+     * lowercased and counted as bytes, and only the distinct words are
+     * decoded into {@code wordAndCount}.
+     *
+     * @param fileChannel
+     *            the input file
+     * @param wordAndCount
+     *            holds the words and word counts from the input file
+     * @param expectedWords
+     *            the number of distinct words to make room for
+     * @throws IOException
+     * @replaces wordAndCount
+     * @requires <pre> fileChannel is UTF-8 text </pre>
+     * @ensures <pre> wordAndCount contains word -> frequency of word in file
+     * </pre>
+     */
+    private static void readInputFileMapped(FileChannel fileChannel,
+            WordCountTable wordAndCount, int expectedWords)
+            throws IOException {
+
+        wordAndCount.clear();
+        Utf8WordCounter counter = new Utf8WordCounter(expectedWords);
+        Utf8Tokenizer words = new Utf8Tokenizer(
+                new SeparatorClassifier(SEPARATORS), true, counter);
+        MappedFileInput.feedAll(fileChannel, words);
+        counter.forEach(wordAndCount::add);
+    }
+
+    /**
+     * Reads a UTF-8 file into a table of form word -> word count using
+     * {@code threads} workers, each mapping and counting its own part of the
+     * file. The counts are the same as those of a sequential read.
+     *
+     * @param fileChannel
+     *            the input file
+     * @param wordAndCount
+     *            holds the words and word counts from the input file
+     * @param threads
+     *            the number of workers
+     * @throws IOException
+     * @replaces wordAndCount
+     * @requires <pre> fileChannel is UTF-8 text and threads > 0 </pre>
+     * @ensures <pre> wordAndCount contains word -> frequency of word in file
+     * </pre>
+     */
+    private static void readInputFileParallel(FileChannel fileChannel,
+            WordCountTable wordAndCount, int threads) throws IOException {
+
+        wordAndCount.clear();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            Utf8WordCounter counter = ParallelWordCount.count(fileChannel,
+                    new SeparatorClassifier(SEPARATORS), true, pool);
+            counter.forEach(wordAndCount::add);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Reads a UTF-8 stream into a table of form word -> word count with a
+     * pipeline: one thread reads, {@code tokenizers} threads split the input
+     * into words and {@code counters} threads count them, all at once.
+     *
+     * @param input
+     *            the input stream
+     * @param wordAndCount
+     *            holds the words and word counts from the input stream
+     * @param tokenizers
+     *            the number of tokenizing threads
+     * @param counters
+     *            the number of counting threads
+     * @throws IOException
+     * @replaces wordAndCount
+     * @requires <pre> input is UTF-8 text, tokenizers > 0 and counters > 0
+     * </pre>
+     * @ensures <pre> wordAndCount contains word -> frequency of word in input
+     * </pre>
+     */
+    private static void readInputFilePipelined(InputStream input,
+            WordCountTable wordAndCount, int tokenizers, int counters)
+            throws IOException {
+
+        wordAndCount.clear();
+        Utf8WordCounter counter = PipelinedWordCount.count(input,
+                new SeparatorClassifier(SEPARATORS), true, tokenizers,
+                counters, PipelinedWordCount.DEFAULT_CHUNK_SIZE);
+        counter.forEach(wordAndCount::add);
+    }
+
+    /**
+     * Reads a UTF-8 file into a table of form word -> word count using
+     * {@code threads} workers that all count into one shared concurrent
+     * counter, instead of each filling a counter of its own to be merged.
+     *
+     * @param fileChannel
+     *            the input file
+     * @param wordAndCount
+     *            holds the words and word counts from the input file
+     * @param threads
+     *            the number of workers
+     * @throws IOException
+     * @replaces wordAndCount
+     * @requires <pre> fileChannel is UTF-8 text and threads > 0 </pre>
+     * @ensures <pre> wordAndCount contains word -> frequency of word in file
+     * </pre>
+     */
+    private static void readInputFileShared(FileChannel fileChannel,
+            WordCountTable wordAndCount, int threads) throws IOException {
+
+        wordAndCount.clear();
+        ConcurrentWordCounter shared = new ConcurrentWordCounter();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            ParallelWordCount.forEachWord(fileChannel,
+                    new SeparatorClassifier(SEPARATORS), true, pool, shared);
+        } finally {
+            pool.shutdown();
+        }
+        shared.forEach(wordAndCount::add);
+    }
+
+    /**
+     * Reads every UTF-8 file named by {@code corpus} into one table of form
+     * word -> word count, counting {@code threads} files at a time on a
+     * work-stealing pool, largest files first.
+     *
+     * @param corpus
+     *            a directory, a glob pattern or a file name
+     * @param wordAndCount
+     *            holds the words and word counts from all the files
+     * @param threads
+     *            the number of workers
+     * @throws IOException
+     * @replaces wordAndCount
+     * @requires <pre> the files are UTF-8 text and threads > 0 </pre>
+     * @ensures <pre> wordAndCount contains word -> frequency of word in all
+     * the files </pre>
+     */
+    private static void readCorpus(String corpus, WordCountTable wordAndCount,
+            int threads) throws IOException {
+
+        wordAndCount.clear();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            Utf8WordCounter counter = CorpusWordCount.count(
+                    CorpusWordCount.listFiles(corpus),
+                    new SeparatorClassifier(SEPARATORS), true, pool);
+            counter.forEach(wordAndCount::add);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Reads every UTF-8 file named by {@code corpus} into one table of form
+     * word -> word count, reading each file with blocking reads on a thread of
+     * its own, with at most {@code maxOpen} files open at once. Meant for
+     * storage where reads wait on latency rather than on the CPU.
+     *
+     * @param corpus
+     *            a directory, a glob pattern or a file name
+     * @param wordAndCount
+     *            holds the words and word counts from all the files
+     * @param maxOpen
+     *            the limit on files open at once
+     * @param latencyMillis
+     *            artificial wait before every read, in milliseconds
+     * @throws IOException
+     * @replaces wordAndCount
+     * @requires <pre> the files are UTF-8 text, maxOpen > 0 and
+     * latencyMillis >= 0 </pre>
+     * @ensures <pre> wordAndCount contains word -> frequency of word in all
+     * the files </pre>
+     */
+    private static void readCorpusBlocking(String corpus,
+            WordCountTable wordAndCount, int maxOpen, long latencyMillis)
+            throws IOException {
+
+        wordAndCount.clear();
+        Utf8WordCounter counter = BlockingWordCount.count(
+                CorpusWordCount.listFiles(corpus),
+                BlockingWordCount.withLatency(latencyMillis),
+                new SeparatorClassifier(SEPARATORS), true, maxOpen);
+        counter.forEach(wordAndCount::add);
     }
 
     /**
@@ -85,7 +433,7 @@ public final class TagCloudGeneratorStandard {
      * @param word
      *            the key to add or increment
      * @param wordAndCount
-     *            the map to add or increment word in
+     *            the table to add or increment word in
      * @ensures <pre> if wordAndCount does not contain the key word, word will
      *          be added with value 1.
      *          if wordAndCount does contain the key word, the value associated
@@ -93,149 +441,295 @@ public final class TagCloudGeneratorStandard {
      * </pre>
      */
     private static void addOrIncrement(String word,
-            Map<String, Integer> wordAndCount) {
+            WordCountTable wordAndCount) {
+
+        wordAndCount.increment(word);
+
+    }
 
-        if (!wordAndCount.containsKey(word)) {
-            wordAndCount.put(word, 1);
+    /**
+     * Counts the heavy hitters of a UTF-8 file in fixed memory with the
+     * Space-Saving algorithm, monitoring at most {@code capacity} words. With
+     * more than one thread, each worker counts its own part of the file and
+     * the counters are merged.
+     *
+     * @param fileChannel
+     *            the input file
+     * @param capacity
+     *            the number of words monitored
+     * @param threads
+     *            the number of workers
+     * @return the monitored words with their counts and errors
+     * @throws IOException
+     * @requires <pre> fileChannel is UTF-8 text, capacity > 0 and
+     * threads > 0 </pre>
+     */
+    private static SpaceSavingCounter readInputFileHeavyHitters(
+            FileChannel fileChannel, int capacity, int threads)
+            throws IOException {
+
+        SeparatorClassifier separators = new SeparatorClassifier(SEPARATORS);
+        SpaceSavingCounter hitters;
+        if (threads == 1) {
+            hitters = new SpaceSavingCounter(capacity);
+            MappedFileInput.feedAll(fileChannel,
+                    new Utf8Tokenizer(separators, true, hitters));
         } else {
-            incrementWordCount(word, wordAndCount);
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                hitters = ParallelWordCount.count(fileChannel, separators,
+                        true, pool, () -> new SpaceSavingCounter(capacity),
+                        (left, right) -> {
+                            left.addAll(right);
+                            return left;
+                        });
+            } finally {
+                pool.shutdown();
+            }
         }
+        return hitters;
+    }
+
+    /**
+     * Reads a UTF-8 file into a counter that holds its words, counts and index
+     * in direct memory, so the heap stays flat however many distinct words
+     * the file has.
+     *
+     * @param fileChannel
+     *            the input file
+     * @return the counted words
+     * @throws IOException
+     * @requires <pre> fileChannel is UTF-8 text </pre>
+     */
+    private static OffHeapWordCounter readInputFileOffHeap(
+            FileChannel fileChannel) throws IOException {
 
+        OffHeapWordCounter counter = new OffHeapWordCounter();
+        MappedFileInput.feedAll(fileChannel, new Utf8Tokenizer(
+                new SeparatorClassifier(SEPARATORS), true, counter));
+        return counter;
     }
 
     /**
-     * increments the value(word count) associated with the given key(word).
+     * Reads a UTF-8 file into a counter that writes sorted runs of words and
+     * counts to temporary files whenever its table outgrows memoryBudget
+     * bytes, so the vocabulary does not have to fit in memory.
      *
-     * @param key
-     *            the word with which to increase the count
-     * @param wordAndCount
-     *            holds the words and word counts from the input file
-     * @requires <pre>
-     * wordAndCount has key
-     * </pre>
+     * @param fileStream
+     *            the input file
+     * @param memoryBudget
+     *            the heap the table may use, in bytes
+     * @return the counted words, to be merged and then closed
+     * @throws IOException
+     * @requires <pre> fileStream is UTF-8 text and memoryBudget > 0 </pre>
+     */
+    private static SpillingWordCounter readInputFileSpilling(
+            InputStream fileStream, long memoryBudget) throws IOException {
+
+        SpillingWordCounter counter = new SpillingWordCounter(memoryBudget,
+                Comparator.naturalOrder());
+        Utf8Tokenizer words = new Utf8Tokenizer(
+                new SeparatorClassifier(SEPARATORS), true, counter);
+        try {
+            words.readFrom(fileStream, Utf8Tokenizer.DEFAULT_BUFFER_SIZE);
+        } catch (UncheckedIOException e) {
+            counter.close();
+            throw e.getCause();
+        }
+        return counter;
+    }
+
+    /**
+     * Returns the number of distinct words in spilled, merging its runs.
      *
+     * @param spilled
+     *            the counted words
+     * @return the number of distinct words
+     * @throws IOException
      */
-    private static void incrementWordCount(String key,
-            Map<String, Integer> wordAndCount) {
-        int oldCount = wordAndCount.remove(key);
-        int newCount = oldCount + 1;
-        wordAndCount.put(key, newCount);
+    private static int countDistinctWords(SpillingWordCounter spilled)
+            throws IOException {
+        int[] distinct = { 0 };
+        spilled.forEachSorted((word, count) -> distinct[0]++);
+        return distinct[0];
     }
 
     /**
-     * Returns the first "word" (maximal length string of characters not in
-     * {@code separators}) or "separator string" (maximal length string of
-     * characters in {@code separators}) in the given {@code text} starting at
-     * the given {@code position}.
+     * Saves the counted words to the table file saveFile, from loaded if the
+     * words were loaded from a table, from offHeap if they were counted
+     * there, and from wordAndCount otherwise.
      *
-     * @param text
-     *            the {@code String} from which to get the word or separator
-     *            string
-     * @param position
-     *            the starting index
-     * @param separators
-     *            the {@code Set} of separator characters
-     * @return the first word or separator string found in {@code text} starting
-     *         at index {@code position}
-     * @requires 0 <= position < |text|
-     * @ensures <pre>
-     * nextWordOrSeparator =
-     * text[position, position + |nextWordOrSeparator|) and
-     * if entries(text[position, position + 1)) intersection separators = {}
-     * then
-     * entries(nextWordOrSeparator) intersection separators = {} and
-     * (position + |nextWordOrSeparator| = |text| or
-     * entries(text[position, position + |nextWordOrSeparator| + 1))
-     * intersection separators /= {})
-     * else
-     * entries(nextWordOrSeparator) is subset of separators and
-     * (position + |nextWordOrSeparator| = |text| or
-     * entries(text[position, position + |nextWordOrSeparator| + 1))
-     * is not subset of separators)
-     * </pre>
+     * @param saveFile
+     *            the table file
+     * @param wordAndCount
+     *            the words and word counts
+     * @param offHeap
+     *            the words and word counts counted off the heap, or null
+     * @param loaded
+     *            the table the words were loaded from, or null
+     * @throws IOException
+     * @requires saveFile is not the file loaded was opened from
      */
-    private static String nextWordOrSeparator(String text, int position,
-            Set<Character> separators) {
-
-        boolean done = false;
-        String word = "";
-        int i = position;
-        char c = text.charAt(i);
-        while (i < text.length() && !done) {
-            c = text.charAt(i);
-            if (separators.contains(c)) {
-                done = true;
-            }
-            i++;
-        }
-        //increments i if the substring will be only a separator
-        //increments i if the last character of the substring is not a separator
-        if (i == position + 1) {
-            i++;
-        } else if (i == text.length() && !separators.contains(c)) {
-            i++;
+    private static void saveTable(Path saveFile, WordCountTable wordAndCount,
+            OffHeapWordCounter offHeap, CountTableFile loaded)
+            throws IOException {
+        if (loaded != null) {
+            CountTableFile.save(saveFile, action -> loaded.forEach(0, action));
+        } else if (offHeap != null) {
+            CountTableFile.save(saveFile,
+                    action -> offHeap.forEach(0, action));
+        } else {
+            CountTableFile.save(saveFile, wordAndCount::forEach);
         }
-        word = text.substring(position, i - 1);
+    }
 
-        return word;
+    /**
+     * Reports whether the paths file1 and file2 name the same file.
+     *
+     * @param file1
+     *            a path
+     * @param file2
+     *            another path
+     * @return true iff both paths lead to the same file
+     * @throws IOException
+     */
+    private static boolean sameFile(Path file1, Path file2)
+            throws IOException {
+        return file1.toAbsolutePath().normalize()
+                .equals(file2.toAbsolutePath().normalize())
+                || (Files.exists(file1) && Files.exists(file2)
+                        && Files.isSameFile(file1, file2));
     }
 
     /**
-     * Generates the set of characters in the given {@code String} into the
-     * given {@code Set}.
+     * Selects the n heavy hitters with the largest counts into sorter2, with
+     * their errors into errors.
      *
-     * @param str
-     *            the given{@code String}
-     * @param charSet
-     *            the {@code Set} to be replaced
-     * @replaces charSet
-     * @ensures charSet = entries(str)
+     * @param n
+     *            the number of words to select
+     * @param hitters
+     *            the heavy hitters to select from
+     * @param sorter2
+     *            the Map to receive the selected words and counts
+     * @param errors
+     *            the Map to receive the selected words and errors
+     * @return a sentence stating what the counts and errors mean
+     * @replaces sorter2, errors
+     * @ensures sorter2 has min(n, |hitters|) elements and its entries are the
+     *          highest-ranked heavy hitters
+     */
+    private static String selectHeavyHitters(int n, SpaceSavingCounter hitters,
+            TreeMap<String, Integer> sorter2, Map<String, Integer> errors) {
+        sorter2.clear();
+        errors.clear();
+        TopWords top = new TopWords(n);
+        Map<String, Integer> allErrors = new HashMap<String, Integer>();
+        hitters.forEach((word, count, error) -> {
+            top.offer(word, count);
+            allErrors.put(word, error);
+        });
+        top.drainTo(sorter2);
+        for (String word : sorter2.keySet()) {
+            errors.put(word, allErrors.get(word));
+        }
+        return "Counts are Space-Saving estimates over " + hitters.total()
+                + " words, tracking " + hitters.size()
+                + " of them: each count is at least the true count and at"
+                + " most its stated error above it.";
+    }
+
+    /**
+     * Selects the n most frequent words of wordAndCount into sorter2. Words
+     * with equal counts are ranked alphabetically, so the selection is
+     * deterministic.
      *
+     * @param n
+     *            the number of words to select
+     * @param wordAndCount
+     *            the words and word counts to select from
+     * @param sorter2
+     *            the Map to receive the selected words
+     * @replaces sorter2
+     * @ensures sorter2 has min(n, |wordAndCount|) elements and its entries are
+     *          the highest-ranked entries in wordAndCount
+     */
+    private static void selectTopWords(int n, WordCountTable wordAndCount,
+            TreeMap<String, Integer> sorter2) {
+        sorter2.clear();
+        TopWords top = new TopWords(n);
+        wordAndCount.forEach(top::offer);
+        top.drainTo(sorter2);
+    }
+
+    /**
+     * Selects the n most frequent words of loaded into sorter2. Only the
+     * words whose counts reach the nth largest count are decoded.
      *
+     * @param n
+     *            the number of words to select
+     * @param loaded
+     *            the saved words and word counts to select from
+     * @param sorter2
+     *            the Map to receive the selected words
+     * @replaces sorter2
+     * @ensures sorter2 has min(n, |loaded|) elements and its entries are the
+     *          highest-ranked entries in loaded
      */
-    private static void generateElements(String str, Set<Character> charSet) {
-        Set<Character> list = new HashSet<Character>();
-        int i = 0;
-        while (i < str.length()) {
-            char c = str.charAt(i);
-            if (!list.contains(c)) {
-                list.add(c);
-            }
-            i++;
+    private static void selectTopWords(int n, CountTableFile loaded,
+            TreeMap<String, Integer> sorter2) {
+        sorter2.clear();
+        if (n > 0) {
+            TopWords top = new TopWords(n);
+            loaded.forEach(loaded.nthLargestCount(n), top::offer);
+            top.drainTo(sorter2);
         }
-        charSet.clear();
-        charSet.addAll(list);
     }
 
     /**
-     * Moves the last n elements from sorter1 into sorter2.
+     * Selects the n most frequent words of spilled into sorter2, merging its
+     * runs as they are offered, so only n words are held at a time.
+     *
+     * @param n
+     *            the number of words to select
+     * @param spilled
+     *            the words and word counts to select from
+     * @param sorter2
+     *            the Map to receive the selected words
+     * @throws IOException
+     * @replaces sorter2
+     * @ensures sorter2 has min(n, |spilled|) elements and its entries are the
+     *          highest-ranked entries in spilled
+     */
+    private static void selectTopWords(int n, SpillingWordCounter spilled,
+            TreeMap<String, Integer> sorter2) throws IOException {
+        sorter2.clear();
+        TopWords top = new TopWords(n);
+        spilled.forEachSorted(top::offer);
+        top.drainTo(sorter2);
+    }
+
+    /**
+     * Selects the n most frequent words of offHeap into sorter2. Only the
+     * words whose counts reach the nth largest count are decoded.
      *
      * @param n
-     *            the number of elements to move
-     * @param sorter1
-     *            the Set with elements to transfer
+     *            the number of words to select
+     * @param offHeap
+     *            the words and word counts to select from
      * @param sorter2
-     *            the Map to receive elements
-     * @clears sorter1
+     *            the Map to receive the selected words
      * @replaces sorter2
-     * @ensures sorter2 has n elements and its entries are a subset of the
-     *          entries in sorter1
+     * @ensures sorter2 has min(n, |offHeap|) elements and its entries are the
+     *          highest-ranked entries in offHeap
      */
-    private static void transferElements(int n,
-            TreeSet<Map.Entry<String, Integer>> sorter1,
+    private static void selectTopWords(int n, OffHeapWordCounter offHeap,
             TreeMap<String, Integer> sorter2) {
         sorter2.clear();
-        int i = 0;
-        while (i < n) {
-            Map.Entry<String, Integer> entry = sorter1.last();
-            String key = entry.getKey();
-            int value = entry.getValue();
-            sorter1.remove(entry);
-            sorter2.put(key, value);
-            i++;
+        if (n > 0) {
+            TopWords top = new TopWords(n);
+            offHeap.forEach(offHeap.nthLargestCount(n), top::offer);
+            top.drainTo(sorter2);
         }
-        sorter1.clear();
-
     }
 
     /**
@@ -249,6 +743,12 @@ public final class TagCloudGeneratorStandard {
      *            a sortingMachine of words
      * @param numWords
      *            the number of words in the cloud
+     * @param note
+     *            a remark about the counts to print above the cloud, or
+     *            {@code null} for none
+     * @param errors
+     *            the largest error of each word's count, or {@code null} if
+     *            the counts are exact
      * @clears words
      * @requires <pre>
      * outFileName must be a valid location for an HTML file.
@@ -259,7 +759,8 @@ public final class TagCloudGeneratorStandard {
      * </pre>
      */
     private static void printToHTML(String inFileName, PrintWriter htmlFile,
-            TreeMap<String, Integer> words, int numWords) {
+            TreeMap<String, Integer> words, int numWords, String note,
+            Map<String, Integer> errors) {
         htmlFile.println("<html>");
         htmlFile.println("<head>");
         htmlFile.println("<title>Top " + numWords + " words in " + inFileName
@@ -275,6 +776,9 @@ public final class TagCloudGeneratorStandard {
         htmlFile.println(
                 "<h2>Top " + numWords + " words in " + inFileName + "</h2>");
         htmlFile.println("<hr>");
+        if (note != null) {
+            htmlFile.println("<p>" + note + "</p>");
+        }
         htmlFile.println("<div class = \"cdiv\">");
         htmlFile.println("<p class = \"cbox\">");
 
@@ -302,8 +806,12 @@ public final class TagCloudGeneratorStandard {
             String key = words.firstKey();
             int value = words.remove(key);
             String fontSize = getFontSize(average, value);
+            String title = "count: " + value;
+            if (errors != null) {
+                title += ", error at most " + errors.get(key);
+            }
             String tag = "<span style=\"cursor:default\" class=\"" + fontSize
-                    + "\" title=\"count: " + value + "\">" + key + "</span>";
+                    + "\" title=\"" + title + "\">" + key + "</span>";
             htmlFile.println(tag);
         }
 
@@ -346,6 +854,46 @@ public final class TagCloudGeneratorStandard {
         return num;
     }
 
+    /**
+     * Reports whether the value given to the command line option option is
+     * positive. Prints an error message if it is not.
+     *
+     * @param option
+     *            the name of the option
+     * @param value
+     *            the value given to the option, or its default
+     * @return true iff value > 0
+     */
+    private static boolean checkPositive(String option, long value) {
+
+        boolean positive = value > 0;
+        if (!positive) {
+            System.out.println(
+                    "Please give " + option + " a positive integer.");
+        }
+        return positive;
+    }
+
+    /**
+     * Reports whether the value given to the command line option option is
+     * strictly between 0 and 1. Prints an error message if it is not.
+     *
+     * @param option
+     *            the name of the option
+     * @param value
+     *            the value given to the option, or its default
+     * @return true iff 0 < value < 1
+     */
+    private static boolean checkFraction(String option, double value) {
+
+        boolean fraction = 0 < value && value < 1;
+        if (!fraction) {
+            System.out.println("Please give " + option
+                    + " a number between 0 and 1.");
+        }
+        return fraction;
+    }
+
     /**
      * Determines whether the word frequency {@code freq} is small, medium, or
      * large and returns the font tag associated with its size.
@@ -372,43 +920,242 @@ public final class TagCloudGeneratorStandard {
      * Main method.
      *
      * @param args
-     *            the command line arguments
+     *            the command line arguments; {@code --utf8} counts the input
+     *            as raw UTF-8 bytes instead of decoding it, and {@code --mmap}
+     *            does the same through a memory mapping of the input;
+     *            {@code --approximate[=candidates]} estimates the counts in
+     *            fixed memory with a Count-Min Sketch of error
+     *            {@code --epsilon=e} and failure probability
+     *            {@code --delta=d}, keeping that many candidate words
+     *            (default 1000), and states the error bound in the cloud;
+     *            {@code --heavy-hitters[=k]} tracks only k candidate words
+     *            (default 1000) with the Space-Saving algorithm, on
+     *            {@code --parallel} workers if given, and shows each count's
+     *            error bound;
+     *            {@code --spill[=megabytes]} counts in at most that much table
+     *            memory (default 256), sorting and writing the words out to
+     *            temporary files when it is full and merging them at the end;
+     *            {@code --off-heap} counts in direct memory outside the heap,
+     *            decoding only the top words; a large vocabulary needs the
+     *            VM's direct memory cap raised above the heap size with
+     *            {@code -XX:MaxDirectMemorySize};
+     *            {@code --presize} first estimates the number of distinct
+     *            words with a HyperLogLog pass and sizes the table for it;
+     *            {@code --async[=bufferSize]} does the same with
+     *            {@code --depth=n} buffers of asynchronous read-ahead
+     *            (default 2);
+     *            {@code --parallel[=threads]} maps and counts parts of the
+     *            input on that many threads (default: one per processor),
+     *            and with {@code --shared} those threads count into one
+     *            concurrent counter instead of merging counters of their own;
+     *            {@code --pipeline[=tokenizers]} reads, tokenizes and counts
+     *            the input on separate threads at once, with
+     *            {@code --counters=n} counting threads (default: half the
+     *            tokenizers);
+     *            {@code --save=file} also saves the counted words to a table
+     *            file, except with {@code --heavy-hitters} or
+     *            {@code --spill}, and {@code --load} treats the input name as
+     *            such a file and opens it instead of counting anything,
+     *            saving it to another file if asked;
+     *            {@code --corpus[=threads]} treats the input name as a
+     *            directory or glob pattern and counts all its files together;
+     *            {@code --blocking[=maxOpen]} does the same with one thread
+     *            per file doing blocking reads, for slow network storage,
+     *            and {@code --latency=millis} slows every read down to try it
      */
     public static void main(String[] args) {
 
+        boolean utf8 = CommandLineOptions.has(args, "--utf8");
+        boolean mapped = CommandLineOptions.has(args, "--mmap");
+        boolean async = CommandLineOptions.has(args, "--async");
+        boolean approximate = CommandLineOptions.has(args, "--approximate");
+        boolean presize = CommandLineOptions.has(args, "--presize");
+        boolean spill = CommandLineOptions.has(args, "--spill");
+        boolean offHeap = CommandLineOptions.has(args, "--off-heap");
+        boolean load = CommandLineOptions.has(args, "--load");
+        String saveFile = CommandLineOptions.value(args, "--save", null);
+        double spillMegabytes = CommandLineOptions.doubleValue(args,
+                "--spill", DEFAULT_SPILL_MEGABYTES);
+        boolean heavyHitters = CommandLineOptions.has(args,
+                "--heavy-hitters");
+        int capacity = CommandLineOptions.intValue(args, "--heavy-hitters",
+                DEFAULT_CANDIDATES);
+        int candidates = CommandLineOptions.intValue(args, "--approximate",
+                DEFAULT_CANDIDATES);
+        double epsilon = CommandLineOptions.doubleValue(args, "--epsilon",
+                DEFAULT_EPSILON);
+        double delta = CommandLineOptions.doubleValue(args, "--delta",
+                DEFAULT_DELTA);
+        int bufferSize = CommandLineOptions.intValue(args, "--async",
+                AsyncFileInput.DEFAULT_BUFFER_SIZE);
+        int depth = CommandLineOptions.intValue(args, "--depth",
+                AsyncFileInput.DEFAULT_DEPTH);
+        boolean parallel = CommandLineOptions.has(args, "--parallel");
+        boolean shared = CommandLineOptions.has(args, "--shared");
+        boolean pipeline = CommandLineOptions.has(args, "--pipeline");
+        boolean blocking = CommandLineOptions.has(args, "--blocking");
+        boolean corpus = blocking || CommandLineOptions.has(args, "--corpus");
+        int maxOpen = CommandLineOptions.intValue(args, "--blocking",
+                BlockingWordCount.DEFAULT_MAX_OPEN);
+        int latency = CommandLineOptions.intValue(args, "--latency", 0);
+        int processors = Runtime.getRuntime().availableProcessors();
+        int threads = CommandLineOptions.intValue(args, "--parallel",
+                CommandLineOptions.intValue(args, "--corpus",
+                        CommandLineOptions.intValue(args, "--pipeline",
+                                processors)));
+        int counters = CommandLineOptions.intValue(args, "--counters",
+                Math.max(1, threads / 2));
+        boolean valid = checkPositive("--parallel",
+                CommandLineOptions.intValue(args, "--parallel", processors));
+        valid &= checkPositive("--corpus",
+                CommandLineOptions.intValue(args, "--corpus", processors));
+        valid &= checkPositive("--pipeline",
+                CommandLineOptions.intValue(args, "--pipeline", processors));
+        valid &= checkPositive("--counters", counters);
+        valid &= checkPositive("--blocking", maxOpen);
+        valid &= checkPositive("--async", bufferSize);
+        valid &= checkPositive("--depth", depth);
+        valid &= checkPositive("--approximate", candidates);
+        valid &= checkPositive("--heavy-hitters", capacity);
+        valid &= checkFraction("--epsilon", epsilon);
+        valid &= checkFraction("--delta", delta);
+        if (valid && approximate && CountMinSketch.cellCount(epsilon,
+                delta) > CountMinSketch.MAX_CELLS) {
+            System.out.println("Please give a larger --epsilon or --delta;"
+                    + " the sketch would need more than "
+                    + CountMinSketch.MAX_CELLS + " counters.");
+            valid = false;
+        }
+        if (!valid) {
+            return;
+        }
         BufferedReader input = new BufferedReader(
                 new InputStreamReader(System.in));
-        BufferedReader inputFile = null;
+        FileInputStream inputFile = null;
         PrintWriter outputFile = null;
 
         System.out.print("Enter the name of the input file: ");
         String inFileName = "";
         try {
             inFileName = input.readLine();
-            inputFile = new BufferedReader(new FileReader(inFileName));
+            if (!corpus && !load) {
+                inputFile = new FileInputStream(inFileName);
+            }
             System.out.print("Enter the name of the output file: ");
             String outFileName = "";
             outFileName = input.readLine();
             outputFile = new PrintWriter(
                     new BufferedWriter(new FileWriter(outFileName)));
 
-            HashMap<String, Integer> wordAndCount = new HashMap<String, Integer>();
-            Comparator<Map.Entry<String, Integer>> freq = new IntegerValue();
-            TreeSet<Map.Entry<String, Integer>> sorter1 = new TreeSet<>(freq);
+            WordCountTable wordAndCount = new WordCountTable();
+            int expectedWords = wordAndCount.capacity();
+            if (presize && inputFile != null) {
+                long distinct = estimateDistinctWords(inputFile.getChannel());
+                System.out.println("About " + distinct + " distinct words.");
+                expectedWords = (int) Math.min(MAX_PRESIZE,
+                        Math.max(1, distinct));
+                wordAndCount = new WordCountTable(expectedWords);
+            }
             TreeMap<String, Integer> sorter2 = new TreeMap<String, Integer>();
+            String note = null;
+            SpaceSavingCounter hitters = null;
+            SpillingWordCounter spilled = null;
+            OffHeapWordCounter offHeapCounter = null;
+            CountTableFile loaded = null;
 
-            readInputFile(inputFile, wordAndCount);
+            if (load) {
+                loaded = CountTableFile.open(Paths.get(inFileName));
+            } else if (blocking) {
+                readCorpusBlocking(inFileName, wordAndCount, maxOpen,
+                        latency);
+            } else if (corpus) {
+                readCorpus(inFileName, wordAndCount, threads);
+            } else if (heavyHitters) {
+                int workers = 1;
+                if (parallel) {
+                    workers = threads;
+                }
+                hitters = readInputFileHeavyHitters(inputFile.getChannel(),
+                        capacity, workers);
+            } else if (spill) {
+                spilled = readInputFileSpilling(inputFile, (long) Math
+                        .max(1, spillMegabytes * SpillingWordCounter.MEGABYTE));
+            } else if (offHeap) {
+                offHeapCounter = readInputFileOffHeap(inputFile.getChannel());
+            } else if (pipeline) {
+                readInputFilePipelined(inputFile, wordAndCount, threads,
+                        counters);
+            } else if (parallel && shared) {
+                readInputFileShared(inputFile.getChannel(), wordAndCount,
+                        threads);
+            } else if (parallel) {
+                readInputFileParallel(inputFile.getChannel(), wordAndCount,
+                        threads);
+            } else if (approximate) {
+                note = readInputFileApproximate(inputFile, wordAndCount,
+                        epsilon, delta, candidates);
+            } else if (async) {
+                readInputFileAsync(inFileName, wordAndCount, expectedWords,
+                        bufferSize, depth);
+            } else if (mapped) {
+                readInputFileMapped(inputFile.getChannel(), wordAndCount,
+                        expectedWords);
+            } else if (utf8) {
+                readInputFileUtf8(inputFile, wordAndCount, expectedWords);
+            } else {
+                readInputFile(new InputStreamReader(inputFile), wordAndCount);
+            }
+
+            if (saveFile != null) {
+                /*
+                 * A table holds exact counts, which the heavy hitters are
+                 * not, and is built in memory, which --spill avoids.
+                 */
+                if (hitters != null || spilled != null) {
+                    System.err.println("Not saved: --save cannot be used"
+                            + " with --heavy-hitters or --spill");
+                } else if (loaded != null && sameFile(Paths.get(saveFile),
+                        Paths.get(inFileName))) {
+                    System.err.println("Not saved: " + saveFile
+                            + " is the table being loaded");
+                } else {
+                    saveTable(Paths.get(saveFile), wordAndCount,
+                            offHeapCounter, loaded);
+                }
+            }
 
-            sorter1.addAll(wordAndCount.entrySet());
-            int n = getNumberOfTags(input, sorter1.size());
-            transferElements(n, sorter1, sorter2);
+            Map<String, Integer> errors = null;
+            int n;
+            if (loaded != null) {
+                n = getNumberOfTags(input, loaded.size());
+                selectTopWords(n, loaded, sorter2);
+            } else if (hitters != null) {
+                n = getNumberOfTags(input, hitters.size());
+                errors = new HashMap<String, Integer>();
+                note = selectHeavyHitters(n, hitters, sorter2, errors);
+            } else if (offHeapCounter != null) {
+                n = getNumberOfTags(input, offHeapCounter.size());
+                selectTopWords(n, offHeapCounter, sorter2);
+            } else if (spilled != null) {
+                try {
+                    n = getNumberOfTags(input, countDistinctWords(spilled));
+                    selectTopWords(n, spilled, sorter2);
+                } finally {
+                    spilled.close();
+                }
+            } else {
+                n = getNumberOfTags(input, wordAndCount.size());
+                selectTopWords(n, wordAndCount, sorter2);
+            }
 
-            printToHTML(inFileName, outputFile, sorter2, n);
+            printToHTML(inFileName, outputFile, sorter2, n, note, errors);
 
             try {
                 input.close();
                 outputFile.close();
-                inputFile.close();
+                if (inputFile != null) {
+                    inputFile.close();
+                }
             } catch (IOException e) {
                 System.err.println("Error closing streams");
             }
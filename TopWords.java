@@ -0,0 +1,191 @@
+import java.util.Map;
+
+/**
+ * Selects the {@code n} most frequent words from a stream of (word, count)
+ * pairs. The selection is kept in a bounded binary min-heap whose root is the
+ * weakest word selected so far, so each pair costs {@code O(log n)} and the
+ * whole stream {@code O(V log n)}, with no more than {@code n} entries held.
+ *
+ * <p>
+ * Ties are broken deterministically: of two words with the same count, the
+ * one that comes first alphabetically ({@code String.compareTo}) ranks
+ * higher. Every distinct word competes on its own, so words with equal
+ * counts are never merged.
+ *
+ * @author Julia Pittner
+ */
+public final class TopWords {
+
+    /**
+     * The selected words, as a min-heap on rank.
+     */
+    private final String[] words;
+
+    /**
+     * The count of each word in {@code words}.
+     */
+    private final int[] counts;
+
+    /**
+     * Number of words selected so far.
+     */
+    private int size;
+
+    /**
+     * Creates a selector for the top {@code n} words.
+     *
+     * @param n
+     *            the number of words to select
+     * @requires n >= 0
+     */
+    public TopWords(int n) {
+        assert n >= 0 : "Violation of: n >= 0";
+        this.words = new String[n];
+        this.counts = new int[n];
+    }
+
+    /**
+     * Reports whether the word at heap index {@code i} ranks below the word at
+     * heap index {@code j}.
+     *
+     * @param i
+     *            a heap index
+     * @param j
+     *            a heap index
+     * @return true iff entry {@code i} ranks below entry {@code j}
+     */
+    private boolean below(int i, int j) {
+        return ranksBelow(this.words[i], this.counts[i], this.words[j],
+                this.counts[j]);
+    }
+
+    /**
+     * Reports whether ({@code word1}, {@code count1}) ranks below
+     * ({@code word2}, {@code count2}): it has a smaller count, or the same
+     * count and comes later alphabetically.
+     *
+     * @param word1
+     *            the first word
+     * @param count1
+     *            the count of the first word
+     * @param word2
+     *            the second word
+     * @param count2
+     *            the count of the second word
+     * @return true iff the first pair ranks below the second
+     */
+    public static boolean ranksBelow(String word1, int count1, String word2,
+            int count2) {
+        return count1 < count2
+                || (count1 == count2 && word1.compareTo(word2) > 0);
+    }
+
+    /**
+     * Swaps heap entries {@code i} and {@code j}.
+     *
+     * @param i
+     *            a heap index
+     * @param j
+     *            a heap index
+     */
+    private void swap(int i, int j) {
+        String word = this.words[i];
+        this.words[i] = this.words[j];
+        this.words[j] = word;
+        int count = this.counts[i];
+        this.counts[i] = this.counts[j];
+        this.counts[j] = count;
+    }
+
+    /**
+     * Restores the heap order by moving entry {@code i} down.
+     *
+     * @param i
+     *            a heap index
+     */
+    private void siftDown(int i) {
+        int parent = i;
+        int child = 2 * parent + 1;
+        boolean done = false;
+        while (!done && child < this.size) {
+            if (child + 1 < this.size && this.below(child + 1, child)) {
+                child++;
+            }
+            if (this.below(child, parent)) {
+                this.swap(child, parent);
+                parent = child;
+                child = 2 * parent + 1;
+            } else {
+                done = true;
+            }
+        }
+    }
+
+    /**
+     * Restores the heap order by moving entry {@code i} up.
+     *
+     * @param i
+     *            a heap index
+     */
+    private void siftUp(int i) {
+        int child = i;
+        while (child > 0 && this.below(child, (child - 1) / 2)) {
+            this.swap(child, (child - 1) / 2);
+            child = (child - 1) / 2;
+        }
+    }
+
+    /**
+     * Offers {@code word} with {@code count} for selection. It is kept if
+     * fewer than {@code n} words are selected, or if it ranks above the
+     * weakest selected word, which it then replaces.
+     *
+     * @param word
+     *            the word
+     * @param count
+     *            the count of the word
+     * @requires word is not already selected
+     */
+    public void offer(String word, int count) {
+        assert word != null : "Violation of: word is not null";
+        if (this.size < this.words.length) {
+            this.words[this.size] = word;
+            this.counts[this.size] = count;
+            this.size++;
+            this.siftUp(this.size - 1);
+        } else if (this.size > 0 && ranksBelow(this.words[0], this.counts[0],
+                word, count)) {
+            this.words[0] = word;
+            this.counts[0] = count;
+            this.siftDown(0);
+        }
+    }
+
+    /**
+     * Returns the number of words selected so far.
+     *
+     * @return the number of words selected
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Moves the selected words and their counts into {@code selected}.
+     *
+     * @param selected
+     *            the map to receive the words
+     * @clears this
+     * @updates selected
+     * @ensures selected = #selected union the selected words and counts
+     */
+    public void drainTo(Map<String, Integer> selected) {
+        assert selected != null : "Violation of: selected is not null";
+        for (int i = 0; i < this.size; i++) {
+            selected.put(this.words[i], this.counts[i]);
+            this.words[i] = null;
+        }
+        this.size = 0;
+    }
+
+}
@@ -0,0 +1,309 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Word tokenizer over raw UTF-8 bytes. Input is pushed in with
+ * {@code feed}, in chunks of any size; a word that straddles two chunks is
+ * carried over, and every word is handed to a {@code Utf8WordSink} as it
+ * ends. No charset decoding is done, so the input never exists as
+ * {@code char}s.
+ *
+ * <p>
+ * Because every byte of a multi-byte UTF-8 sequence is {@code >= 0x80}, a
+ * classifier with only ASCII separators splits UTF-8 bytes exactly where it
+ * would split the decoded characters. When lowercasing, ASCII letters are
+ * folded in place while the word is copied; a word with any non-ASCII byte is
+ * decoded and lowercased with {@code String.toLowerCase} instead, which is
+ * the only time a {@code String} is made.
+ *
+ * <p>
+ * Runs of ASCII letters are scanned eight bytes at a time: each {@code long}
+ * of input is tested for "all letters" with a few word-wide operations (SWAR)
+ * and, if it passes, lowercased and copied whole. Any other {@code long} falls
+ * back to the byte-at-a-time scan, so both paths produce exactly the same
+ * words. The word-wide path is used whenever no ASCII letter is a separator;
+ * setting the system property {@code utf8tokenizer.scalar} to {@code true}
+ * turns it off.
+ *
+ * @author Julia Pittner
+ */
+public final class Utf8Tokenizer {
+
+    /**
+     * Default number of bytes read per chunk by {@code readFrom}.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Initial size of the word buffer.
+     */
+    private static final int INITIAL_WORD_SIZE = 64;
+
+    /**
+     * Difference between an ASCII upper case letter and its lower case form.
+     */
+    private static final int CASE_BIT = 0x20;
+
+    /**
+     * Whether the word-wide scan may be used at all.
+     */
+    private static final boolean SWAR_ALLOWED = !Boolean
+            .getBoolean("utf8tokenizer.scalar");
+
+    /**
+     * View of a {@code byte[]} as little-endian {@code long}s.
+     */
+    private static final VarHandle LONG_VIEW = MethodHandles
+            .byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * A 1 in every byte of a {@code long}.
+     */
+    private static final long ONES = 0x0101010101010101L;
+
+    /**
+     * The high bit of every byte of a {@code long}.
+     */
+    private static final long HIGH_BITS = 0x80 * ONES;
+
+    /**
+     * The case bit of every byte of a {@code long}.
+     */
+    private static final long CASE_BITS = CASE_BIT * ONES;
+
+    /**
+     * Added to a folded byte, sets its high bit iff it is {@code >= 'a'}.
+     */
+    private static final long AT_LEAST_A = (0x80 - 'a') * ONES;
+
+    /**
+     * Added to a folded byte, sets its high bit iff it is {@code > 'z'}.
+     */
+    private static final long ABOVE_Z = (0x80 - 'z' - 1) * ONES;
+
+    /**
+     * The classifier for separator characters.
+     */
+    private final SeparatorClassifier separators;
+
+    /**
+     * Whether runs of letters are scanned a {@code long} at a time.
+     */
+    private final boolean swar;
+
+    /**
+     * Whether words are lowercased before they reach {@code sink}.
+     */
+    private final boolean lowerCase;
+
+    /**
+     * The receiver of the words.
+     */
+    private final Utf8WordSink sink;
+
+    /**
+     * The bytes of the word in progress.
+     */
+    private byte[] word;
+
+    /**
+     * Number of bytes of the word in progress; 0 between words.
+     */
+    private int wordLength;
+
+    /**
+     * Whether the word in progress has any non-ASCII byte.
+     */
+    private boolean nonAscii;
+
+    /**
+     * Creates a tokenizer that sends words to {@code sink}.
+     *
+     * @param separators
+     *            the classifier for separator characters
+     * @param lowerCase
+     *            whether to lowercase words
+     * @param sink
+     *            the receiver of the words
+     * @throws IllegalArgumentException
+     *             if {@code separators} has a non-ASCII separator
+     */
+    public Utf8Tokenizer(SeparatorClassifier separators, boolean lowerCase,
+            Utf8WordSink sink) {
+        assert separators != null : "Violation of: separators is not null";
+        assert sink != null : "Violation of: sink is not null";
+        if (!separators.isAsciiOnly()) {
+            throw new IllegalArgumentException(
+                    "UTF-8 tokenizing needs ASCII separators");
+        }
+        this.separators = separators;
+        this.swar = SWAR_ALLOWED && !separators.separatesLetters();
+        this.lowerCase = lowerCase;
+        this.sink = sink;
+        this.word = new byte[INITIAL_WORD_SIZE];
+    }
+
+    /**
+     * Reports whether all eight bytes of {@code bytes} are ASCII letters.
+     *
+     * @param bytes
+     *            eight bytes of input
+     * @return true iff every byte is in {@code 'A'..'Z'} or {@code 'a'..'z'}
+     */
+    private static boolean allLetters(long bytes) {
+        /*
+         * Setting the case bit maps exactly the letters onto 'a'..'z'. With
+         * no high bits set, the two additions cannot carry between bytes.
+         */
+        long folded = bytes | CASE_BITS;
+        long atLeastA = folded + AT_LEAST_A;
+        long aboveZ = folded + ABOVE_Z;
+        return (bytes & HIGH_BITS) == 0
+                && (atLeastA & ~aboveZ & HIGH_BITS) == HIGH_BITS;
+    }
+
+    /**
+     * Makes room for {@code extra} more bytes in the word in progress.
+     *
+     * @param extra
+     *            the number of bytes about to be appended
+     */
+    private void reserve(int extra) {
+        if (this.wordLength + extra > this.word.length) {
+            byte[] larger = new byte[Math.max(this.word.length * 2,
+                    this.wordLength + extra)];
+            System.arraycopy(this.word, 0, larger, 0, this.wordLength);
+            this.word = larger;
+        }
+    }
+
+    /**
+     * Appends eight ASCII letters to the word in progress.
+     *
+     * @param letters
+     *            the letters, little-endian
+     */
+    private void appendLetters(long letters) {
+        this.reserve(Long.BYTES);
+        long folded = letters;
+        if (this.lowerCase) {
+            folded |= CASE_BITS;
+        }
+        LONG_VIEW.set(this.word, this.wordLength, folded);
+        this.wordLength += Long.BYTES;
+    }
+
+    /**
+     * Appends {@code b} to the word in progress.
+     *
+     * @param b
+     *            the byte to append
+     */
+    private void append(byte b) {
+        this.reserve(1);
+        byte folded = b;
+        if (b < 0) {
+            this.nonAscii = true;
+        } else if (this.lowerCase && b >= 'A' && b <= 'Z') {
+            folded = (byte) (b | CASE_BIT);
+        }
+        this.word[this.wordLength] = folded;
+        this.wordLength++;
+    }
+
+    /**
+     * Sends the word in progress, if any, to {@code sink} and starts a new
+     * one.
+     */
+    private void endWord() {
+        if (this.wordLength > 0) {
+            if (this.lowerCase && this.nonAscii) {
+                String decoded = new String(this.word, 0, this.wordLength,
+                        StandardCharsets.UTF_8);
+                byte[] lower = decoded.toLowerCase()
+                        .getBytes(StandardCharsets.UTF_8);
+                this.sink.addWord(lower, lower.length);
+            } else {
+                this.sink.addWord(this.word, this.wordLength);
+            }
+            this.wordLength = 0;
+            this.nonAscii = false;
+        }
+    }
+
+    /**
+     * Tokenizes the bytes of {@code chunk} between its position and limit.
+     * The position of {@code chunk} is not changed.
+     *
+     * @param chunk
+     *            the next bytes of the input
+     */
+    public void feed(ByteBuffer chunk) {
+        assert chunk != null : "Violation of: chunk is not null";
+        ByteBuffer in = chunk;
+        if (this.swar) {
+            in = chunk.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        }
+        int limit = in.limit();
+        int wideLimit = limit - Long.BYTES;
+        int i = in.position();
+        while (i < limit) {
+            long bytes = 0;
+            if (this.swar && i <= wideLimit) {
+                bytes = in.getLong(i);
+            }
+            if (bytes != 0 && allLetters(bytes)) {
+                this.appendLetters(bytes);
+                i += Long.BYTES;
+            } else {
+                byte b = in.get(i);
+                if (b >= 0 && this.separators.isSeparator((char) b)) {
+                    this.endWord();
+                } else {
+                    this.append(b);
+                }
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Ends the input: a word in progress is sent to the sink. The tokenizer
+     * can then be fed the start of a new input.
+     */
+    public void finish() {
+        this.endWord();
+    }
+
+    /**
+     * Feeds all of {@code in} through this tokenizer, {@code bufferSize}
+     * bytes at a time, and then finishes.
+     *
+     * @param in
+     *            the source of UTF-8 bytes
+     * @param bufferSize
+     *            the number of bytes to read at a time
+     * @throws IOException
+     *             if reading fails
+     * @requires bufferSize > 0
+     */
+    public void readFrom(InputStream in, int bufferSize) throws IOException {
+        assert in != null : "Violation of: in is not null";
+        assert bufferSize > 0 : "Violation of: bufferSize > 0";
+        byte[] buffer = new byte[bufferSize];
+        ByteBuffer chunk = ByteBuffer.wrap(buffer);
+        int read = in.read(buffer);
+        while (read >= 0) {
+            chunk.clear().limit(read);
+            this.feed(chunk);
+            read = in.read(buffer);
+        }
+        this.finish();
+    }
+
+}
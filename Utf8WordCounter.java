@@ -0,0 +1,379 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Word counter keyed on UTF-8 byte slices. Keys live back to back in one
+ * growing {@code byte[]}, counts in an {@code int[]}, and words are found
+ * with an open-addressing (linear probing) index, so counting a word that was
+ * seen before allocates nothing. Words are only decoded into {@code String}s
+ * by {@code forEach}. One counter holds at most {@code MAX_WORDS} distinct
+ * words and {@code MAX_KEY_BYTES} bytes of them (about 2 GB); larger
+ * vocabularies need the off-heap counter ({@code --off-heap}).
+ *
+ * @author Julia Pittner
+ */
+public final class Utf8WordCounter implements Utf8WordSink {
+
+    /**
+     * Default number of distinct words to make room for.
+     */
+    private static final int DEFAULT_EXPECTED_WORDS = 1 << 10;
+
+    /**
+     * Average key length assumed when sizing the key bytes.
+     */
+    private static final int AVERAGE_KEY_LENGTH = 8;
+
+    /**
+     * Largest number of index slots made up front.
+     */
+    private static final int MAX_INITIAL_SLOTS = 1 << 30;
+
+    /**
+     * Largest number of distinct words; the index, at twice this, is then
+     * the largest power of two an array can have.
+     */
+    public static final int MAX_WORDS = 1 << 29;
+
+    /**
+     * Largest number of key bytes; a little under the largest array the VM
+     * allows.
+     */
+    public static final int MAX_KEY_BYTES = Integer.MAX_VALUE - 8;
+
+    /**
+     * Index slots, each holding an entry number plus one, or 0 if empty. The
+     * length is a power of two and at least twice {@code size}.
+     */
+    private int[] slots;
+
+    /**
+     * Hash of each entry's key.
+     */
+    private int[] hashes;
+
+    /**
+     * Start of each entry's key in {@code keys}.
+     */
+    private int[] offsets;
+
+    /**
+     * Length of each entry's key.
+     */
+    private int[] lengths;
+
+    /**
+     * Count of each entry.
+     */
+    private int[] counts;
+
+    /**
+     * The key bytes of all entries.
+     */
+    private byte[] keys;
+
+    /**
+     * Number of bytes used in {@code keys}.
+     */
+    private int keysUsed;
+
+    /**
+     * Number of entries.
+     */
+    private int size;
+
+    /**
+     * Creates an empty counter.
+     */
+    public Utf8WordCounter() {
+        this(DEFAULT_EXPECTED_WORDS);
+    }
+
+    /**
+     * Creates an empty counter with room for {@code expectedWords} distinct
+     * words before it has to grow. The index and the key bytes are sized in
+     * {@code long} arithmetic and capped, so a large estimate cannot overflow
+     * them.
+     *
+     * @param expectedWords
+     *            the expected number of distinct words
+     * @requires expectedWords > 0
+     */
+    public Utf8WordCounter(int expectedWords) {
+        assert expectedWords > 0 : "Violation of: expectedWords > 0";
+        int capacity = (int) Math.min(MAX_INITIAL_SLOTS,
+                Long.highestOneBit(expectedWords * 2L - 1) * 2);
+        this.slots = new int[capacity];
+        this.hashes = new int[expectedWords];
+        this.offsets = new int[expectedWords];
+        this.lengths = new int[expectedWords];
+        this.counts = new int[expectedWords];
+        this.keys = new byte[(int) Math.min(MAX_KEY_BYTES,
+                (long) expectedWords * AVERAGE_KEY_LENGTH)];
+    }
+
+    /**
+     * Returns a well-mixed hash of {@code word[offset, offset + length)}.
+     *
+     * @param word
+     *            the buffer holding the word
+     * @param offset
+     *            the start of the word
+     * @param length
+     *            the length of the word
+     * @return the hash of the word
+     */
+    static int hash(byte[] word, int offset, int length) {
+        final int prime = 0x01000193;
+        final int mix1 = 0x85EBCA6B;
+        final int mix2 = 0xC2B2AE35;
+        final int shift1 = 16;
+        final int shift2 = 13;
+        int h = 0x811C9DC5;
+        for (int i = offset; i < offset + length; i++) {
+            h = (h ^ word[i]) * prime;
+        }
+        h ^= h >>> shift1;
+        h *= mix1;
+        h ^= h >>> shift2;
+        h *= mix2;
+        h ^= h >>> shift1;
+        return h;
+    }
+
+    /**
+     * Reports whether entry {@code e} has the key
+     * {@code word[offset, offset + length)}.
+     *
+     * @param e
+     *            the entry number
+     * @param word
+     *            the buffer holding the word
+     * @param offset
+     *            the start of the word
+     * @param length
+     *            the length of the word
+     * @return true iff the keys are equal
+     */
+    private boolean keyEquals(int e, byte[] word, int offset, int length) {
+        return this.lengths[e] == length
+                && Arrays.equals(this.keys, this.offsets[e],
+                        this.offsets[e] + length, word, offset,
+                        offset + length);
+    }
+
+    /**
+     * Returns the slot holding {@code word[offset, offset + length)}, or the
+     * empty slot where it would go.
+     *
+     * @param h
+     *            the hash of the word
+     * @param word
+     *            the buffer holding the word
+     * @param offset
+     *            the start of the word
+     * @param length
+     *            the length of the word
+     * @return the slot for the word
+     */
+    private int find(int h, byte[] word, int offset, int length) {
+        int mask = this.slots.length - 1;
+        int slot = h & mask;
+        int e = this.slots[slot] - 1;
+        while (e >= 0 && !(this.hashes[e] == h
+                && this.keyEquals(e, word, offset, length))) {
+            slot = (slot + 1) & mask;
+            e = this.slots[slot] - 1;
+        }
+        return slot;
+    }
+
+    /**
+     * Doubles the index and rehashes every entry into it.
+     */
+    private void growSlots() {
+        int[] larger = new int[this.slots.length * 2];
+        int mask = larger.length - 1;
+        for (int e = 0; e < this.size; e++) {
+            int slot = this.hashes[e] & mask;
+            while (larger[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            larger[slot] = e + 1;
+        }
+        this.slots = larger;
+    }
+
+    /**
+     * Adds a new entry for {@code word[offset, offset + length)} at
+     * {@code slot}.
+     *
+     * @param slot
+     *            the empty slot for the word
+     * @param h
+     *            the hash of the word
+     * @param word
+     *            the buffer holding the word
+     * @param offset
+     *            the start of the word
+     * @param length
+     *            the length of the word
+     * @param count
+     *            the initial count
+     * @throws IllegalStateException
+     *             if the counter already holds {@code MAX_WORDS} words or the
+     *             word does not fit in {@code MAX_KEY_BYTES}
+     */
+    private void insert(int slot, int h, byte[] word, int offset, int length,
+            int count) {
+        long keysNeeded = (long) this.keysUsed + length;
+        if (this.size == MAX_WORDS || keysNeeded > MAX_KEY_BYTES) {
+            throw new IllegalStateException("more than " + MAX_WORDS
+                    + " distinct words or " + MAX_KEY_BYTES
+                    + " bytes of them; count with --off-heap instead");
+        }
+        if (this.size == this.counts.length) {
+            int capacity = (int) Math.min(MAX_WORDS, this.size * 2L);
+            this.hashes = Arrays.copyOf(this.hashes, capacity);
+            this.offsets = Arrays.copyOf(this.offsets, capacity);
+            this.lengths = Arrays.copyOf(this.lengths, capacity);
+            this.counts = Arrays.copyOf(this.counts, capacity);
+        }
+        if (keysNeeded > this.keys.length) {
+            this.keys = Arrays.copyOf(this.keys, (int) Math.min(MAX_KEY_BYTES,
+                    Math.max(this.keys.length * 2L, keysNeeded)));
+        }
+        System.arraycopy(word, offset, this.keys, this.keysUsed, length);
+        int e = this.size;
+        this.hashes[e] = h;
+        this.offsets[e] = this.keysUsed;
+        this.lengths[e] = length;
+        this.counts[e] = count;
+        this.keysUsed += length;
+        this.size++;
+        this.slots[slot] = e + 1;
+        if (this.size * 2 > this.slots.length) {
+            this.growSlots();
+        }
+    }
+
+    /**
+     * Adds {@code count} to the count of {@code word[offset, offset + length)},
+     * adding the word if it is new.
+     *
+     * @param word
+     *            the buffer holding the word
+     * @param offset
+     *            the start of the word
+     * @param length
+     *            the length of the word
+     * @param count
+     *            the amount to add
+     */
+    public void add(byte[] word, int offset, int length, int count) {
+        assert word != null : "Violation of: word is not null";
+        int h = hash(word, offset, length);
+        int slot = this.find(h, word, offset, length);
+        int e = this.slots[slot] - 1;
+        if (e >= 0) {
+            this.counts[e] += count;
+        } else {
+            this.insert(slot, h, word, offset, length, count);
+        }
+    }
+
+    @Override
+    public void addWord(byte[] word, int length) {
+        this.add(word, 0, length, 1);
+    }
+
+    /**
+     * Adds every word of {@code other} to this with its count in
+     * {@code other}.
+     *
+     * @param other
+     *            the counter to merge in
+     * @updates this
+     * @ensures this = #this with every count of other added
+     */
+    public void addAll(Utf8WordCounter other) {
+        assert other != null : "Violation of: other is not null";
+        assert other != this : "Violation of: other is not this";
+        for (int e = 0; e < other.size; e++) {
+            this.add(other.keys, other.offsets[e], other.lengths[e],
+                    other.counts[e]);
+        }
+    }
+
+    /**
+     * Returns the count of {@code word[offset, offset + length)}.
+     *
+     * @param word
+     *            the buffer holding the word
+     * @param offset
+     *            the start of the word
+     * @param length
+     *            the length of the word
+     * @return the count of the word, or 0 if it was never added
+     */
+    public int count(byte[] word, int offset, int length) {
+        assert word != null : "Violation of: word is not null";
+        int h = hash(word, offset, length);
+        int e = this.slots[this.find(h, word, offset, length)] - 1;
+        int result = 0;
+        if (e >= 0) {
+            result = this.counts[e];
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of distinct words.
+     *
+     * @return the number of distinct words
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the number of bytes of heap held by the index, the entry arrays
+     * and the key bytes.
+     *
+     * @return the bytes held
+     */
+    public long memoryUsed() {
+        final int intBytes = Integer.BYTES;
+        return (long) intBytes * (this.slots.length + this.hashes.length
+                + this.offsets.length + this.lengths.length
+                + this.counts.length) + this.keys.length;
+    }
+
+    /**
+     * Returns the number of key bytes held, that is the total UTF-8 length of
+     * the distinct words.
+     *
+     * @return the key bytes held
+     */
+    public long keyBytes() {
+        return this.keysUsed;
+    }
+
+    /**
+     * Passes every word, decoded from UTF-8, and its count to {@code action},
+     * in the order the words were first added.
+     *
+     * @param action
+     *            the receiver of the words and counts
+     */
+    public void forEach(ObjIntConsumer<String> action) {
+        assert action != null : "Violation of: action is not null";
+        for (int e = 0; e < this.size; e++) {
+            String word = new String(this.keys, this.offsets[e],
+                    this.lengths[e], StandardCharsets.UTF_8);
+            action.accept(word, this.counts[e]);
+        }
+    }
+
+}
@@ -0,0 +1,20 @@
+/**
+ * Receiver of the words found by a {@code Utf8Tokenizer}.
+ *
+ * @author Julia Pittner
+ */
+public interface Utf8WordSink {
+
+    /**
+     * Accepts one word, given as its UTF-8 bytes. The array is reused by the
+     * caller, so implementations must copy any bytes they keep.
+     *
+     * @param word
+     *            the buffer holding the word
+     * @param length
+     *            the number of bytes of the word, starting at index 0
+     * @requires 0 < length <= |word|
+     */
+    void addWord(byte[] word, int length);
+
+}
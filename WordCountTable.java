@@ -0,0 +1,418 @@
+import java.util.Arrays;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Counter of {@code String} words. Keys and their counts are kept in two
+ * parallel arrays, {@code String[]} and {@code int[]}, indexed by an
+ * open-addressing (linear probing) hash, so counting a word is a single probe
+ * sequence and there is no per-entry node or {@code Integer} box.
+ *
+ * <p>
+ * Words can also be counted straight from a span of a {@code char[]}; the
+ * span is only turned into a {@code String} the first time it is seen.
+ *
+ * @author Julia Pittner
+ */
+public final class WordCountTable {
+
+    /**
+     * Default number of distinct words to make room for.
+     */
+    private static final int DEFAULT_EXPECTED_WORDS = 1 << 10;
+
+    /**
+     * Multiplier for Fibonacci hashing (2^32 divided by the golden ratio).
+     */
+    private static final int GOLDEN = 0x9E3779B9;
+
+    /**
+     * Bits in an {@code int}.
+     */
+    private static final int INT_BITS = 32;
+
+    /**
+     * The key in each slot, or {@code null} if the slot is empty. The length
+     * is a power of two and at least twice {@code size}.
+     */
+    private String[] keys;
+
+    /**
+     * The {@code hashCode} of the key in each slot.
+     */
+    private int[] hashes;
+
+    /**
+     * The count of the key in each slot.
+     */
+    private int[] counts;
+
+    /**
+     * log2 of the number of slots.
+     */
+    private int bits;
+
+    /**
+     * Number of keys.
+     */
+    private int size;
+
+    /**
+     * Creates an empty table.
+     */
+    public WordCountTable() {
+        this(DEFAULT_EXPECTED_WORDS);
+    }
+
+    /**
+     * Creates an empty table with room for {@code expectedWords} distinct
+     * words before it has to grow.
+     *
+     * @param expectedWords
+     *            the expected number of distinct words
+     * @requires expectedWords > 0
+     */
+    public WordCountTable(int expectedWords) {
+        assert expectedWords > 0 : "Violation of: expectedWords > 0";
+        this.allocate(INT_BITS
+                - Integer.numberOfLeadingZeros(expectedWords * 2 - 1));
+    }
+
+    /**
+     * Replaces the slots with {@code 2^bits} empty ones.
+     *
+     * @param newBits
+     *            log2 of the number of slots
+     */
+    private void allocate(int newBits) {
+        int capacity = 1 << Math.max(newBits, 1);
+        this.bits = Integer.numberOfTrailingZeros(capacity);
+        this.keys = new String[capacity];
+        this.hashes = new int[capacity];
+        this.counts = new int[capacity];
+    }
+
+    /**
+     * Returns the home slot of a key with hash code {@code h}.
+     *
+     * @param h
+     *            the hash code of the key
+     * @return the first slot to probe
+     */
+    private int home(int h) {
+        return (h * GOLDEN) >>> (INT_BITS - this.bits);
+    }
+
+    /**
+     * Returns the slot holding {@code key}, or the empty slot where it would
+     * go.
+     *
+     * @param key
+     *            the word
+     * @param h
+     *            {@code key.hashCode()}
+     * @return the slot for {@code key}
+     */
+    private int find(String key, int h) {
+        int mask = this.keys.length - 1;
+        int slot = this.home(h);
+        String k = this.keys[slot];
+        while (k != null && !(this.hashes[slot] == h && k.equals(key))) {
+            slot = (slot + 1) & mask;
+            k = this.keys[slot];
+        }
+        return slot;
+    }
+
+    /**
+     * Reports whether {@code key} equals {@code chars[start, end)}.
+     *
+     * @param key
+     *            the stored word
+     * @param chars
+     *            the buffer holding the span
+     * @param start
+     *            the start of the span
+     * @param end
+     *            the end (exclusive) of the span
+     * @return true iff they are equal
+     */
+    private static boolean spanEquals(String key, char[] chars, int start,
+            int end) {
+        boolean equal = key.length() == end - start;
+        for (int i = start; equal && i < end; i++) {
+            equal = key.charAt(i - start) == chars[i];
+        }
+        return equal;
+    }
+
+    /**
+     * Returns the slot holding {@code chars[start, end)}, or the empty slot
+     * where it would go.
+     *
+     * @param chars
+     *            the buffer holding the word
+     * @param start
+     *            the start of the word
+     * @param end
+     *            the end (exclusive) of the word
+     * @param h
+     *            the {@code String.hashCode} of the word
+     * @return the slot for the word
+     */
+    private int find(char[] chars, int start, int end, int h) {
+        int mask = this.keys.length - 1;
+        int slot = this.home(h);
+        String k = this.keys[slot];
+        while (k != null && !(this.hashes[slot] == h
+                && spanEquals(k, chars, start, end))) {
+            slot = (slot + 1) & mask;
+            k = this.keys[slot];
+        }
+        return slot;
+    }
+
+    /**
+     * Doubles the number of slots and reinserts every key.
+     */
+    private void grow() {
+        String[] oldKeys = this.keys;
+        int[] oldHashes = this.hashes;
+        int[] oldCounts = this.counts;
+        this.allocate(this.bits + 1);
+        int mask = this.keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = this.home(oldHashes[i]);
+                while (this.keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                this.keys[slot] = oldKeys[i];
+                this.hashes[slot] = oldHashes[i];
+                this.counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    /**
+     * Stores a new key in the empty {@code slot}.
+     *
+     * @param slot
+     *            the empty slot
+     * @param key
+     *            the word
+     * @param h
+     *            {@code key.hashCode()}
+     * @param count
+     *            the initial count
+     */
+    private void insert(int slot, String key, int h, int count) {
+        this.keys[slot] = key;
+        this.hashes[slot] = h;
+        this.counts[slot] = count;
+        this.size++;
+        if (this.size * 2 > this.keys.length) {
+            this.grow();
+        }
+    }
+
+    /**
+     * Adds {@code count} to the count of {@code key}, adding it if it is new.
+     *
+     * @param key
+     *            the word
+     * @param count
+     *            the amount to add
+     * @updates this
+     * @ensures this = #this with count(key) increased by count
+     */
+    public void add(String key, int count) {
+        assert key != null : "Violation of: key is not null";
+        int h = key.hashCode();
+        int slot = this.find(key, h);
+        if (this.keys[slot] != null) {
+            this.counts[slot] += count;
+        } else {
+            this.insert(slot, key, h, count);
+        }
+    }
+
+    /**
+     * Adds one to the count of {@code key}, adding it if it is new.
+     *
+     * @param key
+     *            the word
+     * @updates this
+     * @ensures this = #this with count(key) increased by 1
+     */
+    public void increment(String key) {
+        this.add(key, 1);
+    }
+
+    /**
+     * Adds one to the count of the word {@code chars[start, end)}, adding it
+     * if it is new. A {@code String} is only made for a new word.
+     *
+     * @param chars
+     *            the buffer holding the word
+     * @param start
+     *            the start of the word
+     * @param end
+     *            the end (exclusive) of the word
+     * @updates this
+     * @ensures this = #this with count(chars[start, end)) increased by 1
+     */
+    public void increment(char[] chars, int start, int end) {
+        assert chars != null : "Violation of: chars is not null";
+        assert 0 <= start && start <= end && end <= chars.length
+                : "Violation of: 0 <= start <= end <= |chars|";
+        int h = 0;
+        final int prime = 31;
+        for (int i = start; i < end; i++) {
+            h = prime * h + chars[i];
+        }
+        int slot = this.find(chars, start, end, h);
+        if (this.keys[slot] != null) {
+            this.counts[slot]++;
+        } else {
+            this.insert(slot, new String(chars, start, end - start), h, 1);
+        }
+    }
+
+    /**
+     * Returns the count of {@code key}.
+     *
+     * @param key
+     *            the word
+     * @return the count of {@code key}, or 0 if it was never added
+     */
+    public int count(String key) {
+        assert key != null : "Violation of: key is not null";
+        return this.counts[this.find(key, key.hashCode())];
+    }
+
+    /**
+     * Reports whether {@code key} has been added.
+     *
+     * @param key
+     *            the word
+     * @return true iff {@code key} is in this
+     */
+    public boolean contains(String key) {
+        assert key != null : "Violation of: key is not null";
+        return this.keys[this.find(key, key.hashCode())] != null;
+    }
+
+    /**
+     * Removes {@code key} and returns its count. Later keys in the probe
+     * sequence are shifted back into the hole, so no tombstones are left.
+     *
+     * @param key
+     *            the word
+     * @return the count of {@code key}, or 0 if it was never added
+     * @updates this
+     * @ensures this = #this without key
+     */
+    public int remove(String key) {
+        assert key != null : "Violation of: key is not null";
+        int hole = this.find(key, key.hashCode());
+        int count = this.counts[hole];
+        if (this.keys[hole] != null) {
+            int mask = this.keys.length - 1;
+            int j = (hole + 1) & mask;
+            while (this.keys[j] != null) {
+                int home = this.home(this.hashes[j]);
+                if (((j - home) & mask) >= ((j - hole) & mask)) {
+                    this.keys[hole] = this.keys[j];
+                    this.hashes[hole] = this.hashes[j];
+                    this.counts[hole] = this.counts[j];
+                    hole = j;
+                }
+                j = (j + 1) & mask;
+            }
+            this.keys[hole] = null;
+            this.counts[hole] = 0;
+            this.size--;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of distinct words.
+     *
+     * @return the number of distinct words
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Removes every word.
+     *
+     * @clears this
+     */
+    public void clear() {
+        Arrays.fill(this.keys, null);
+        Arrays.fill(this.counts, 0);
+        this.size = 0;
+    }
+
+    /**
+     * Returns the number of distinct words this holds before it has to grow.
+     *
+     * @return the capacity
+     */
+    public int capacity() {
+        return this.keys.length / 2;
+    }
+
+    /**
+     * Returns the number of slots, for walking them with {@code keyAt} and
+     * {@code countAt}.
+     *
+     * @return the number of slots
+     */
+    int slots() {
+        return this.keys.length;
+    }
+
+    /**
+     * Returns the word in {@code slot}.
+     *
+     * @param slot
+     *            the slot
+     * @return the word in {@code slot}, or {@code null} if it is empty
+     * @requires 0 <= slot < slots()
+     */
+    String keyAt(int slot) {
+        return this.keys[slot];
+    }
+
+    /**
+     * Returns the count in {@code slot}.
+     *
+     * @param slot
+     *            the slot
+     * @return the count in {@code slot}, or 0 if it is empty
+     * @requires 0 <= slot < slots()
+     */
+    int countAt(int slot) {
+        return this.counts[slot];
+    }
+
+    /**
+     * Passes every word and its count to {@code action}, in no particular
+     * order.
+     *
+     * @param action
+     *            the receiver of the words and counts
+     */
+    public void forEach(ObjIntConsumer<String> action) {
+        assert action != null : "Violation of: action is not null";
+        for (int i = 0; i < this.keys.length; i++) {
+            if (this.keys[i] != null) {
+                action.accept(this.keys[i], this.counts[i]);
+            }
+        }
+    }
+
+}
@@ -1,11 +1,20 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.Collator;
 import java.util.Comparator;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 
 import components.map.Map;
-import components.map.Map1L;
 import components.queue.Queue;
 import components.queue.Queue1L;
-import components.set.Set;
-import components.set.Set1L;
 import components.simplereader.SimpleReader;
 import components.simplereader.SimpleReader1L;
 import components.simplewriter.SimpleWriter;
@@ -18,6 +27,16 @@ import components.simplewriter.SimpleWriter1L;
  * @author Julia Pittner
  */
 public final class WordCounter {
+    /**
+     * Largest number of distinct words the map is sized for up front.
+     */
+    private static final long MAX_PRESIZE = 1 << 24;
+
+    /**
+     * Default table memory, in megabytes, before counts are spilled to disk.
+     */
+    private static final double DEFAULT_SPILL_MEGABYTES = 256;
+
     /**
      *
      * Alphabetizes a Queue.
@@ -74,7 +93,7 @@ public final class WordCounter {
      * @param position
      *            the starting index
      * @param separators
-     *            the {@code Set} of separator characters
+     *            the classifier for separator characters
      * @return the first word or separator string found in {@code text} starting
      *         at index {@code position}
      * @requires 0 <= position < |text|
@@ -95,119 +114,146 @@ public final class WordCounter {
      * </pre>
      */
     public static String nextWordOrSeparator(String text, int position,
-            Set<Character> separators) {
+            SeparatorClassifier separators) {
+        return text.substring(position,
+                nextWordOrSeparatorEnd(text, position, separators));
+    }
+
+    /**
+     * Returns the index just past the first "word" or "separator string" in
+     * the given {@code text} starting at the given {@code position}, i.e., the
+     * span {@code [position, nextWordOrSeparatorEnd)} is what
+     * {@link #nextWordOrSeparator} would return. Nothing is allocated.
+     *
+     * @param text
+     *            the {@code CharSequence} from which to get the word or
+     *            separator string
+     * @param position
+     *            the starting index
+     * @param separators
+     *            the classifier for separator characters
+     * @return the end (exclusive) of the word or separator string found in
+     *         {@code text} starting at index {@code position}
+     * @requires 0 <= position < |text|
+     * @ensures <pre>
+     * position < nextWordOrSeparatorEnd <= |text|  and
+     * text[position, nextWordOrSeparatorEnd) =
+     *   nextWordOrSeparator(text, position, separators)
+     * </pre>
+     */
+    public static int nextWordOrSeparatorEnd(CharSequence text, int position,
+            SeparatorClassifier separators) {
         assert text != null : "Violation of: text is not null";
         assert separators != null : "Violation of: separators is not null";
         assert 0 <= position : "Violation of: 0 <= position";
         assert position < text.length() : "Violation of: position < |text|";
 
         int length = text.length();
-        String wordOrSeparator = "";
-
-        char character = text.charAt(position);
-        boolean isSubset = separators.contains(character);
-
-        if (isSubset) {
-            while (isSubset && position < length) {
-                character = text.charAt(position);
-                wordOrSeparator += character;
-                int len = position + 1;
-                if (len < length) {
-                    char test = text.charAt(position + 1);
-                    isSubset = separators.contains(test);
-                }
-                position++;
-            }
-        } else {
-            while (!isSubset && position < length) {
-                character = text.charAt(position);
-                wordOrSeparator += character;
-                int len = position + 1;
-                if (len < length) {
-                    char test = text.charAt(position + 1);
-                    isSubset = separators.contains(test);
-                }
-
-                position++;
-
-            }
+        boolean isSubset = separators.isSeparator(text.charAt(position));
+        int end = position + 1;
+        while (end < length
+                && separators.isSeparator(text.charAt(end)) == isSubset) {
+            end++;
         }
-        return wordOrSeparator;
+        return end;
     }
 
     /**
-     * Generates the set of characters in the given {@code String} into the
-     * given {@code Set}.
+     * Puts the words counted in {@code wordMap} and their counts in a HTML
+     * table in alphabetical order. Only the distinct words are sorted.
      *
-     * @param str
-     *            the given {@code String}
-     * @param stringSet
-     *            the {@code Set} to be replaced
-     * @replaces stringSet
-     * @ensures stringSet = entries(str)
+     * @param wordMap
+     *            map with the words and counts
+     * @param outputName
+     *            file to be printed to
+     * @param a
+     *            sorts the words in alphabetical order
+     * @clears wordMap
      */
-    private static void generateElements(String str, Set<Character> stringSet) {
-        assert str != null : "Violation of: str is not null";
-        assert stringSet != null : "Violation of: stringSet is not null";
-        for (int i = 0; i < str.length(); i++) {
-            char character = str.charAt(i);
-            boolean isSubset = stringSet.contains(character);
-            if (!isSubset) {
-                stringSet.add(character);
-            }
 
-        }
+    public static void countWord(CountingMap wordMap, SimpleWriter outputName,
+            Comparator<String> a) {
 
+        countWord(wordMap, outputName, words -> words.sort(a));
     }
 
     /**
-     * Counts the number of times each word occurs in the given input file and
-     * puts the results in a HTML table in alphabetical order.
+     * Puts the words counted in {@code wordMap} and their counts in a HTML
+     * table in the order {@code sorter} sorts them into. Only the distinct
+     * words are sorted.
      *
-     * @param words
-     *            queue with words
      * @param wordMap
      *            map with the words and counts
      * @param outputName
      *            file to be printed to
-     * @param a
-     *            sorts the words from the queue in alphabetical order
+     * @param sorter
+     *            sorts a queue of words in place
+     * @clears wordMap
      */
 
-    public static void countWord(Queue<String> words,
-            Map<String, Integer> wordMap, SimpleWriter outputName,
-            Comparator<String> a) {
-
-        while (words.length() > 0) {
-            String word = words.dequeue();
-            if (wordMap.hasKey(word)) {
-                int value = wordMap.value(word);
-                int newValue = value + 1;
-                wordMap.replaceValue(word, newValue);
+    public static void countWord(CountingMap wordMap, SimpleWriter outputName,
+            Consumer<Queue<String>> sorter) {
 
-            } else {
-                wordMap.add(word, 1);
-            }
+        Queue<String> newWords = new Queue1L<>();
+        for (Map.Pair<String, Integer> pair : wordMap) {
+            newWords.enqueue(pair.key());
         }
-        Map<String, Integer> newMap = wordMap.newInstance();
-        Queue<String> newWords = words.newInstance();
+        sorter.accept(newWords);
 
-        while (wordMap.size() != 0) {
-            Map.Pair<String, Integer> tempPair = wordMap.removeAny();
-            newMap.add(tempPair.key(), tempPair.value());
-            newWords.enqueue(tempPair.key());
+        while (newWords.length() > 0) {
+            String word = newWords.dequeue();
+            outputName.println("<tr>");
+            outputName.println("<td>" + word + "</td>");
+            outputName.println("<td>" + wordMap.value(word) + "</td>");
+            outputName.println("</tr>");
         }
         wordMap.clear();
-        newWords.sort(a);
+    }
 
-        while (newWords.iterator().hasNext()) {
-            String word = newWords.dequeue();
-            Map.Pair<String, Integer> alpha = newMap.remove(word);
+    /**
+     * Puts the words counted in {@code trie} and their counts in a HTML table
+     * in alphabetical order, which is the order the trie lists them in.
+     *
+     * @param trie
+     *            trie with the words and counts
+     * @param outputName
+     *            file to be printed to
+     * @clears trie
+     */
+
+    public static void countWord(WordTrie trie, SimpleWriter outputName) {
+
+        trie.forEach((word, count) -> {
             outputName.println("<tr>");
-            outputName.println("<td>" + alpha.key() + "</td>");
-            outputName.println("<td>" + alpha.value() + "</td>");
+            outputName.println("<td>" + word + "</td>");
+            outputName.println("<td>" + count + "</td>");
             outputName.println("</tr>");
-        }
+        });
+        trie.clear();
+    }
+
+    /**
+     * Puts the words counted in {@code counter} and their counts in a HTML
+     * table in the order {@code counter} merges them, printing each row as
+     * its word comes out of the merge, so the words are never all in memory.
+     *
+     * @param counter
+     *            the spilled words and counts
+     * @param outputName
+     *            file to be printed to
+     * @throws IOException
+     *             if reading the spilled runs fails
+     */
+
+    public static void countWordSpilled(SpillingWordCounter counter,
+            SimpleWriter outputName) throws IOException {
+
+        counter.forEachSorted((word, count) -> {
+            outputName.println("<tr>");
+            outputName.println("<td>" + word + "</td>");
+            outputName.println("<td>" + count + "</td>");
+            outputName.println("</tr>");
+        });
     }
 
     /**
@@ -224,46 +270,341 @@ public final class WordCounter {
     }
 
     /**
-     * Separates the words from the characters in the given input file.
+     * Separates the words from the characters in the given input file and
+     * counts them in {@code wordMap} as they are found. The file is tokenized
+     * in fixed-size chunks, so no line is ever held as a whole, and no word is
+     * copied out of the chunk buffer unless it is new to {@code wordMap}.
      *
-     * @param words
-     *            queue with words
      * @param input
      *            file to be read
-     * @param separatorsSet
-     *            set containing separators
-     * @return words
+     * @param separators
+     *            classifier for separator characters; must include the line
+     *            terminators
+     * @param wordMap
+     *            map with the words and counts
+     * @throws IOException
+     *             if reading {@code input} fails
+     * @updates wordMap
      */
 
-    public static Queue<String> separateWords(SimpleReader input,
-            Set<Character> separatorsSet, Queue<String> words) {
-
-        while (!input.atEOS()) {
-            String line = input.nextLine();
-            int position = 0;
-            while (position < line.length()) {
-                String word = nextWordOrSeparator(line, position,
-                        separatorsSet);
-                if (!separatorsSet.contains(word.charAt(0))) {
-                    words.enqueue(word);
-                }
-                position += word.length();
+    public static void separateWords(Reader input,
+            SeparatorClassifier separators, CountingMap wordMap)
+            throws IOException {
+
+        CharTokenizer tokenizer = new CharTokenizer(input, separators);
+        while (tokenizer.nextWord()) {
+            wordMap.increment(tokenizer.wordBuffer(), tokenizer.wordStart(),
+                    tokenizer.wordEnd());
+        }
+    }
+
+    /**
+     * Separates the words from the characters in the given input file and
+     * counts them in {@code trie} as they are found, straight from the chunk
+     * buffer.
+     *
+     * @param input
+     *            file to be read
+     * @param separators
+     *            classifier for separator characters; must include the line
+     *            terminators
+     * @param trie
+     *            trie with the words and counts
+     * @throws IOException
+     *             if reading {@code input} fails
+     * @updates trie
+     */
+
+    public static void separateWords(Reader input,
+            SeparatorClassifier separators, WordTrie trie) throws IOException {
+
+        CharTokenizer tokenizer = new CharTokenizer(input, separators);
+        while (tokenizer.nextWord()) {
+            trie.increment(tokenizer.wordBuffer(), tokenizer.wordStart(),
+                    tokenizer.wordEnd());
+        }
+    }
+
+    /**
+     * Counts the words of the given UTF-8 input file in {@code wordMap},
+     * tokenizing a memory mapping of the file in place. Words are counted as
+     * bytes, and only the distinct words are decoded into {@code wordMap}.
+     *
+     * @param input
+     *            file to be read
+     * @param separators
+     *            classifier for separator characters; must be ASCII and
+     *            include the line terminators
+     * @param wordMap
+     *            map with the words and counts
+     * @throws IOException
+     *             if mapping {@code input} fails
+     * @updates wordMap
+     */
+
+    public static void separateWordsMapped(FileChannel input,
+            SeparatorClassifier separators, CountingMap wordMap)
+            throws IOException {
+
+        Utf8WordCounter counter = new Utf8WordCounter();
+        MappedFileInput.feedAll(input,
+                new Utf8Tokenizer(separators, false, counter));
+        counter.forEach(wordMap::increment);
+    }
+
+    /**
+     * Counts the words of the given UTF-8 input file in {@code trie},
+     * tokenizing a memory mapping of the file in place. Only the distinct
+     * words are decoded into {@code trie}.
+     *
+     * @param input
+     *            file to be read
+     * @param separators
+     *            classifier for separator characters; must be ASCII and
+     *            include the line terminators
+     * @param trie
+     *            trie with the words and counts
+     * @throws IOException
+     *             if mapping {@code input} fails
+     * @updates trie
+     */
+
+    public static void separateWordsMapped(FileChannel input,
+            SeparatorClassifier separators, WordTrie trie) throws IOException {
+
+        Utf8WordCounter counter = new Utf8WordCounter();
+        MappedFileInput.feedAll(input,
+                new Utf8Tokenizer(separators, false, counter));
+        counter.forEach(trie::add);
+    }
+
+    /**
+     * Counts the words of every UTF-8 file named by {@code corpus} in
+     * {@code wordMap}, counting {@code threads} files at a time on a
+     * work-stealing pool, largest files first.
+     *
+     * @param corpus
+     *            a directory, a glob pattern or a file name
+     * @param separators
+     *            classifier for separator characters; must be ASCII and
+     *            include the line terminators
+     * @param wordMap
+     *            map with the words and counts
+     * @param threads
+     *            the number of workers
+     * @throws IOException
+     *             if listing or reading the files fails
+     * @updates wordMap
+     */
+
+    public static void separateWordsCorpus(String corpus,
+            SeparatorClassifier separators, CountingMap wordMap, int threads)
+            throws IOException {
+
+        countCorpus(corpus, separators, threads).forEach(wordMap::increment);
+    }
+
+    /**
+     * Counts the words of every UTF-8 file named by {@code corpus} in
+     * {@code trie}, counting {@code threads} files at a time on a
+     * work-stealing pool, largest files first.
+     *
+     * @param corpus
+     *            a directory, a glob pattern or a file name
+     * @param separators
+     *            classifier for separator characters; must be ASCII and
+     *            include the line terminators
+     * @param trie
+     *            trie with the words and counts
+     * @param threads
+     *            the number of workers
+     * @throws IOException
+     *             if listing or reading the files fails
+     * @updates trie
+     */
+
+    public static void separateWordsCorpus(String corpus,
+            SeparatorClassifier separators, WordTrie trie, int threads)
+            throws IOException {
+
+        countCorpus(corpus, separators, threads).forEach(trie::add);
+    }
+
+    /**
+     * Returns the words of every UTF-8 file named by {@code corpus} with
+     * their counts, counting {@code threads} files at a time.
+     *
+     * @param corpus
+     *            a directory, a glob pattern or a file name
+     * @param separators
+     *            classifier for separator characters; must be ASCII and
+     *            include the line terminators
+     * @param threads
+     *            the number of workers
+     * @return the words and counts of all the files
+     * @throws IOException
+     *             if listing or reading the files fails
+     */
+
+    private static Utf8WordCounter countCorpus(String corpus,
+            SeparatorClassifier separators, int threads) throws IOException {
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return CorpusWordCount.count(CorpusWordCount.listFiles(corpus),
+                    separators, false, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Counts the words of the given UTF-8 input file in {@code counter},
+     * which spills sorted runs to disk when its table outgrows its budget.
+     *
+     * @param input
+     *            file to be read
+     * @param separators
+     *            classifier for separator characters; must be ASCII and
+     *            include the line terminators
+     * @param counter
+     *            the counter to count in
+     * @throws IOException
+     *             if reading {@code input} or writing a run fails
+     * @updates counter
+     */
+
+    public static void separateWordsSpilling(FileInputStream input,
+            SeparatorClassifier separators, SpillingWordCounter counter)
+            throws IOException {
+
+        try {
+            new Utf8Tokenizer(separators, false, counter).readFrom(input,
+                    Utf8Tokenizer.DEFAULT_BUFFER_SIZE);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Counts the words of every UTF-8 file named by {@code corpus} in
+     * {@code counter}, one file after another, since the counter is not safe
+     * to share between threads.
+     *
+     * @param corpus
+     *            a directory, a glob pattern or a file name
+     * @param separators
+     *            classifier for separator characters; must be ASCII and
+     *            include the line terminators
+     * @param counter
+     *            counter with the words and counts
+     * @throws IOException
+     *             if listing or reading the files, or writing a run, fails
+     * @updates counter
+     */
+
+    public static void separateWordsCorpusSpilling(String corpus,
+            SeparatorClassifier separators, SpillingWordCounter counter)
+            throws IOException {
+
+        for (Path file : CorpusWordCount.listFiles(corpus)) {
+            try (FileInputStream input = new FileInputStream(file.toFile())) {
+                separateWordsSpilling(input, separators, counter);
             }
         }
-        return words;
+    }
+
+    /**
+     * Saves the words counted in {@code wordMap} and their counts to the
+     * table file {@code file}, to be rendered later without recounting.
+     *
+     * @param wordMap
+     *            map with the words and counts
+     * @param file
+     *            the table file
+     * @throws IOException
+     *             if writing the file fails
+     */
+
+    public static void saveWords(CountingMap wordMap, String file)
+            throws IOException {
+
+        CountTableFile.save(Paths.get(file), action -> {
+            for (Map.Pair<String, Integer> pair : wordMap) {
+                action.accept(pair.key(), pair.value());
+            }
+        });
+    }
+
+    /**
+     * Estimates the number of distinct words in the UTF-8 file
+     * {@code channel} with a HyperLogLog pass over a memory mapping of it,
+     * holding none of the words.
+     *
+     * @param channel
+     *            the input file
+     * @param separators
+     *            classifier for separator characters; must be ASCII
+     * @return the estimated number of distinct words
+     * @throws IOException
+     *             if mapping the file fails
+     */
+    public static long estimateDistinctWords(FileChannel channel,
+            SeparatorClassifier separators) throws IOException {
+        HyperLogLog distinct = new HyperLogLog();
+        MappedFileInput.feedAll(channel,
+                new Utf8Tokenizer(separators, false, distinct));
+        return distinct.estimate();
     }
 
     /**
      * Main method.
      *
      * @param args
-     *            the command line arguments; unused here
+     *            the command line arguments; {@code --mmap} reads the input
+     *            as UTF-8 through a memory mapping, and
+     *            {@code --corpus[=threads]} treats the input name as a
+     *            directory or glob pattern and counts all its files
+     *            together, one at a time with {@code --spill};
+     *            {@code --presize} first estimates the number of
+     *            distinct words with a HyperLogLog pass and sizes the map for
+     *            it; {@code --spill[=megabytes]} counts in at most that much
+     *            table memory (default 256), writing sorted runs of words to
+     *            temporary files when it is full, and merges the runs
+     *            straight into the table; {@code --save=file} also saves
+     *            the words counted in memory to a table file, except with
+     *            {@code --spill}, and
+     *            {@code --load} treats the input name as such a file and
+     *            renders it without counting anything; {@code --trie}
+     *            counts in a trie on case-folded characters, which lists the
+     *            words in alphabetical order without sorting them;
+     *            {@code --folded-keys} sorts the words on their lower case,
+     *            computed once per word, and {@code --collate[=languageTag]}
+     *            sorts them in the alphabetical order of a locale (default:
+     *            the default locale) on collation keys;
+     *            {@code --radix-sort} sorts the words with a multikey radix
+     *            quicksort on their lower case; any of these sorts runs on all
+     *            processors with {@code --parallel-sort}
      */
     public static void main(String[] args) {
+        boolean mapped = CommandLineOptions.has(args, "--mmap");
+        boolean corpus = CommandLineOptions.has(args, "--corpus");
+        boolean presize = CommandLineOptions.has(args, "--presize");
+        boolean spill = CommandLineOptions.has(args, "--spill");
+        boolean load = CommandLineOptions.has(args, "--load");
+        String saveFile = CommandLineOptions.value(args, "--save", null);
+        double spillMegabytes = CommandLineOptions.doubleValue(args,
+                "--spill", DEFAULT_SPILL_MEGABYTES);
+        int threads = CommandLineOptions.intValue(args, "--corpus",
+                Runtime.getRuntime().availableProcessors());
+        /*
+         * Line terminators end words, as they did when input was read a line
+         * at a time.
+         */
         final String separatorString = "," + " " + ":" + "." + ";" + "-" + "?"
-                + "!";
-        Set<Character> separatorsSet = new Set1L<>();
-        generateElements(separatorString, separatorsSet);
+                + "!" + "\n" + "\r";
+        SeparatorClassifier separators = new SeparatorClassifier(
+                separatorString);
 
         SimpleWriter out = new SimpleWriter1L();
         SimpleReader in = new SimpleReader1L();
@@ -272,25 +613,128 @@ public final class WordCounter {
         String inputFile = in.nextLine();
         out.println("Enter output folder: ");
         String output = in.nextLine();
-        SimpleReader input = new SimpleReader1L(inputFile);
 
-        Map<String, Integer> wordMap = new Map1L<>();
-        Queue<String> words = new Queue1L<>();
+        CountingMap wordMap = new CountingMap();
+        Comparator<String> a = new Alphabetize();
+        SpillingWordCounter spilled = null;
+        boolean foldedKeys = CommandLineOptions.has(args, "--folded-keys");
+        boolean collate = CommandLineOptions.has(args, "--collate");
+        boolean radixSort = CommandLineOptions.has(args, "--radix-sort");
+        boolean parallelSort = CommandLineOptions.has(args, "--parallel-sort");
+        Collator collator = null;
+        if (collate) {
+            String tag = CommandLineOptions.value(args, "--collate", null);
+            Locale locale = Locale.getDefault();
+            if (tag != null) {
+                locale = Locale.forLanguageTag(tag);
+            }
+            collator = Collator.getInstance(locale);
+        }
+        WordTrie trie = null;
+        if (CommandLineOptions.has(args, "--trie")) {
+            trie = new WordTrie();
+        }
 
-        words = separateWords(input, separatorsSet, words);
+        try {
+            if (load) {
+                CountTableFile table = CountTableFile
+                        .open(Paths.get(inputFile));
+                if (trie != null) {
+                    table.forEach(0, trie::add);
+                } else {
+                    table.forEach(0, wordMap::increment);
+                }
+            } else if (spill) {
+                spilled = new SpillingWordCounter((long) Math.max(1,
+                        spillMegabytes * SpillingWordCounter.MEGABYTE), a);
+                if (corpus) {
+                    separateWordsCorpusSpilling(inputFile, separators,
+                            spilled);
+                } else {
+                    try (FileInputStream input = new FileInputStream(
+                            inputFile)) {
+                        separateWordsSpilling(input, separators, spilled);
+                    }
+                }
+            } else if (trie != null && corpus) {
+                separateWordsCorpus(inputFile, separators, trie, threads);
+            } else if (trie != null) {
+                try (FileInputStream input = new FileInputStream(inputFile)) {
+                    if (mapped) {
+                        separateWordsMapped(input.getChannel(), separators,
+                                trie);
+                    } else {
+                        separateWords(new InputStreamReader(input),
+                                separators, trie);
+                    }
+                }
+            } else if (corpus) {
+                separateWordsCorpus(inputFile, separators, wordMap, threads);
+            } else {
+                try (FileInputStream input = new FileInputStream(inputFile)) {
+                    if (presize) {
+                        long distinct = estimateDistinctWords(
+                                input.getChannel(), separators);
+                        out.println("About " + distinct + " distinct words.");
+                        wordMap = new CountingMap((int) Math.min(MAX_PRESIZE,
+                                Math.max(1, distinct)));
+                    }
+                    if (mapped) {
+                        separateWordsMapped(input.getChannel(), separators,
+                                wordMap);
+                    } else {
+                        separateWords(new InputStreamReader(input),
+                                separators, wordMap);
+                    }
+                }
+            }
 
-        Comparator<String> a = new Alphabetize();
-        words.sort(a);
+            if (saveFile != null && spilled != null) {
+                /*
+                 * A table file is built in memory, which --spill avoids.
+                 */
+                out.println("Not saved: --save cannot be used with --spill");
+            } else if (saveFile != null && trie != null) {
+                CountTableFile.save(Paths.get(saveFile), trie::forEach);
+            } else if (saveFile != null) {
+                saveWords(wordMap, saveFile);
+            }
 
-        SimpleWriter outputName = new SimpleWriter1L(output + ".html");
-        printHeader(outputName, inputFile);
-        countWord(words, wordMap, outputName, a);
-        outputFooter(outputName);
+            SimpleWriter outputName = new SimpleWriter1L(output + ".html");
+            printHeader(outputName, inputFile);
+            if (spilled != null) {
+                countWordSpilled(spilled, outputName);
+            } else if (trie != null) {
+                countWord(trie, outputName);
+            } else if (radixSort) {
+                int sortThreads = 1;
+                if (parallelSort) {
+                    sortThreads = Runtime.getRuntime().availableProcessors();
+                }
+                countWord(wordMap, outputName,
+                        new RadixWordSorter(sortThreads)::sort);
+            } else if (foldedKeys || collate) {
+                countWord(wordMap, outputName,
+                        new FoldedKeySorter(collator, parallelSort)::sort);
+            } else {
+                countWord(wordMap, outputName, a);
+            }
+            outputFooter(outputName);
+            outputName.close();
+        } catch (IOException e) {
+            out.println("Error reading " + inputFile + ": " + e);
+        } finally {
+            if (spilled != null) {
+                try {
+                    spilled.close();
+                } catch (IOException e) {
+                    out.println("Error deleting spilled runs: " + e);
+                }
+            }
+        }
 
         in.close();
         out.close();
-        outputName.close();
-        input.close();
     }
 
 }
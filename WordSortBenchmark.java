@@ -0,0 +1,176 @@
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import components.queue.Queue;
+import components.queue.Queue1L;
+
+/**
+ * Compares ways to sort the distinct words of the {@code WordCounter} table in
+ * case-insensitive alphabetical order: {@code Queue1L.sort} with a comparator
+ * that lower cases both words on every comparison, {@code FoldedKeySorter},
+ * which lower cases each word once, and {@code RadixWordSorter} on one thread
+ * and on all of them. The words are distinct, of mixed case, and share
+ * prefixes the way the words of a large vocabulary do.
+ *
+ * <p>
+ * Arguments, all optional: {@code --words=n} (default 1000000),
+ * {@code --threads=n} for the parallel radix sort (default: one per
+ * processor) and {@code --rounds=n} (default 5).
+ *
+ * @author Julia Pittner
+ */
+public final class WordSortBenchmark {
+
+    /**
+     * Seed for the words, so every run sorts the same words.
+     */
+    private static final long SEED = 42;
+
+    /**
+     * Nanoseconds per millisecond.
+     */
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    /**
+     * Letters the words are made of, most common first.
+     */
+    private static final String LETTERS = "etaoinshrdlcumwfgypbvkjxqz";
+
+    /**
+     * Longest word generated.
+     */
+    private static final int MAX_LENGTH = 14;
+
+    /**
+     * One word in this many starts with a capital letter.
+     */
+    private static final int CAPITALIZED = 8;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private WordSortBenchmark() {
+    }
+
+    /**
+     * Returns {@code count} distinct random words. Letters are drawn with a
+     * skew toward the common ones, so many words share prefixes.
+     *
+     * @param count
+     *            the number of words
+     * @return the words
+     */
+    private static String[] distinctWords(int count) {
+        Random random = new Random(SEED);
+        Set<String> seen = new HashSet<>();
+        String[] words = new String[count];
+        int n = 0;
+        while (n < count) {
+            int length = 2 + random.nextInt(MAX_LENGTH - 1);
+            StringBuilder word = new StringBuilder(length);
+            for (int i = 0; i < length; i++) {
+                double u = random.nextDouble();
+                word.append(LETTERS.charAt((int) (u * u * LETTERS.length())));
+            }
+            if (random.nextInt(CAPITALIZED) == 0) {
+                word.setCharAt(0, Character.toUpperCase(word.charAt(0)));
+            }
+            String w = word.toString();
+            if (seen.add(w)) {
+                words[n] = w;
+                n++;
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Sorts a fresh queue of {@code words} with {@code sorter} and returns the
+     * elapsed time; the sorted words are left in {@code result}.
+     *
+     * @param words
+     *            the words
+     * @param sorter
+     *            sorts a queue of words in place
+     * @param result
+     *            receives the sorted words
+     * @return the elapsed time in nanoseconds
+     * @replaces result
+     */
+    private static long time(String[] words, Consumer<Queue<String>> sorter,
+            String[] result) {
+        Queue<String> queue = new Queue1L<>();
+        for (String word : words) {
+            queue.enqueue(word);
+        }
+        long start = System.nanoTime();
+        sorter.accept(queue);
+        long elapsed = System.nanoTime() - start;
+        for (int i = 0; i < result.length; i++) {
+            result[i] = queue.dequeue();
+        }
+        return elapsed;
+    }
+
+    /**
+     * Reports whether {@code sorted} is in the same case-insensitive order as
+     * {@code expected}.
+     *
+     * @param expected
+     *            the words sorted by {@code Queue1L.sort}
+     * @param sorted
+     *            the words sorted another way
+     * @return true iff the lower cases of the words agree position by
+     *         position
+     */
+    private static boolean sameOrder(String[] expected, String[] sorted) {
+        boolean same = true;
+        for (int i = 0; i < expected.length && same; i++) {
+            same = expected[i].toLowerCase().equals(sorted[i].toLowerCase());
+        }
+        return same;
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments, as described above
+     */
+    public static void main(String[] args) {
+        int count = CommandLineOptions.intValue(args, "--words", 1_000_000);
+        int threads = CommandLineOptions.intValue(args, "--threads",
+                Runtime.getRuntime().availableProcessors());
+        int rounds = CommandLineOptions.intValue(args, "--rounds", 5);
+        String[] words = distinctWords(count);
+        Comparator<String> alphabetize = (o1, o2) -> o1.toLowerCase()
+                .compareTo(o2.toLowerCase());
+        String[] expected = new String[count];
+        String[] sorted = new String[count];
+
+        System.out.println("words=" + count + " threads=" + threads);
+        for (int round = 1; round <= rounds; round++) {
+            long queueTime = time(words, queue -> queue.sort(alphabetize),
+                    expected);
+            long keyedTime = time(words, new FoldedKeySorter(false)::sort,
+                    sorted);
+            boolean same = sameOrder(expected, sorted);
+            long radixTime = time(words, new RadixWordSorter(1)::sort,
+                    sorted);
+            same = same && sameOrder(expected, sorted);
+            long parallelTime = time(words,
+                    new RadixWordSorter(threads)::sort, sorted);
+            same = same && sameOrder(expected, sorted);
+            System.out.println("round " + round + ": Queue1L.sort "
+                    + queueTime / NANOS_PER_MILLI + " ms, folded keys "
+                    + keyedTime / NANOS_PER_MILLI + " ms, radix "
+                    + radixTime / NANOS_PER_MILLI + " ms, parallel radix "
+                    + parallelTime / NANOS_PER_MILLI + " ms"
+                    + (same ? "" : " (ORDER DIFFERS)"));
+        }
+    }
+
+}
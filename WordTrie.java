@@ -0,0 +1,421 @@
+import java.util.Arrays;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Word counter kept as a trie on case-folded characters, so its words come out
+ * in case-insensitive alphabetical order without being sorted. Words that
+ * fold to the same characters share one path, and so does every common
+ * prefix. A word that is already in lower case is stored only as its path; a
+ * word with upper-case characters is kept as a {@code String} at the end of
+ * its folded path, beside the other words that fold the same way.
+ *
+ * <p>
+ * Nodes are numbers into parallel arrays rather than objects. Each node holds
+ * its character, its first child and its next sibling, and siblings are kept
+ * in ascending order of character. Characters are folded one at a time with
+ * {@code Character.toLowerCase}, which agrees with {@code String.toLowerCase}
+ * except for the few characters whose lower case depends on the locale or on
+ * the characters around them.
+ *
+ * @author Julia Pittner
+ */
+public final class WordTrie {
+
+    /**
+     * Node number meaning "no node".
+     */
+    private static final int NONE = -1;
+
+    /**
+     * The root node, which has no character.
+     */
+    private static final int ROOT = 0;
+
+    /**
+     * Number of nodes made room for at first.
+     */
+    private static final int INITIAL_NODES = 1 << 10;
+
+    /**
+     * The folded character of each node.
+     */
+    private char[] labels;
+
+    /**
+     * The first child of each node, or {@code NONE}.
+     */
+    private int[] firstChild;
+
+    /**
+     * The next sibling of each node, or {@code NONE}.
+     */
+    private int[] nextSibling;
+
+    /**
+     * The count of the lower-case word spelled by the path to each node.
+     */
+    private int[] counts;
+
+    /**
+     * The first variant of each node, or {@code NONE}.
+     */
+    private int[] firstVariant;
+
+    /**
+     * Number of nodes.
+     */
+    private int nodes;
+
+    /**
+     * The words that are not in lower case.
+     */
+    private String[] variantWords;
+
+    /**
+     * The count of each variant.
+     */
+    private int[] variantCounts;
+
+    /**
+     * The next variant of the same node, or {@code NONE}.
+     */
+    private int[] nextVariant;
+
+    /**
+     * Number of variants.
+     */
+    private int variants;
+
+    /**
+     * Number of distinct words.
+     */
+    private int size;
+
+    /**
+     * Creates an empty trie.
+     */
+    public WordTrie() {
+        this.clear();
+    }
+
+    /**
+     * Empties this trie.
+     *
+     * @clears this
+     */
+    public void clear() {
+        this.labels = new char[INITIAL_NODES];
+        this.firstChild = new int[INITIAL_NODES];
+        this.nextSibling = new int[INITIAL_NODES];
+        this.counts = new int[INITIAL_NODES];
+        this.firstVariant = new int[INITIAL_NODES];
+        this.nodes = 0;
+        this.variantWords = new String[INITIAL_NODES];
+        this.variantCounts = new int[INITIAL_NODES];
+        this.nextVariant = new int[INITIAL_NODES];
+        this.variants = 0;
+        this.size = 0;
+        this.newNode('\0', NONE);
+    }
+
+    /**
+     * Adds a node with character {@code label} and next sibling
+     * {@code sibling}, and returns it.
+     *
+     * @param label
+     *            the folded character
+     * @param sibling
+     *            the next sibling
+     * @return the new node
+     */
+    private int newNode(char label, int sibling) {
+        if (this.nodes == this.labels.length) {
+            int capacity = this.nodes * 2;
+            this.labels = Arrays.copyOf(this.labels, capacity);
+            this.firstChild = Arrays.copyOf(this.firstChild, capacity);
+            this.nextSibling = Arrays.copyOf(this.nextSibling, capacity);
+            this.counts = Arrays.copyOf(this.counts, capacity);
+            this.firstVariant = Arrays.copyOf(this.firstVariant, capacity);
+        }
+        int node = this.nodes;
+        this.labels[node] = label;
+        this.firstChild[node] = NONE;
+        this.nextSibling[node] = sibling;
+        this.counts[node] = 0;
+        this.firstVariant[node] = NONE;
+        this.nodes++;
+        return node;
+    }
+
+    /**
+     * Returns the child of {@code parent} with character {@code label},
+     * adding it in order among its siblings if there is none.
+     *
+     * @param parent
+     *            the parent node
+     * @param label
+     *            the folded character
+     * @return the child
+     */
+    private int child(int parent, char label) {
+        int previous = NONE;
+        int node = this.firstChild[parent];
+        while (node != NONE && this.labels[node] < label) {
+            previous = node;
+            node = this.nextSibling[node];
+        }
+        if (node == NONE || this.labels[node] != label) {
+            node = this.newNode(label, node);
+            if (previous == NONE) {
+                this.firstChild[parent] = node;
+            } else {
+                this.nextSibling[previous] = node;
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Reports whether {@code word} is {@code chars[start, start + length)}.
+     *
+     * @param word
+     *            the word
+     * @param chars
+     *            the buffer holding the other word
+     * @param start
+     *            the start of the other word
+     * @param length
+     *            the length of the other word
+     * @return true iff the words are equal
+     */
+    private static boolean equals(String word, char[] chars, int start,
+            int length) {
+        boolean equal = word.length() == length;
+        int i = 0;
+        while (equal && i < length) {
+            equal = word.charAt(i) == chars[start + i];
+            i++;
+        }
+        return equal;
+    }
+
+    /**
+     * Adds {@code count} to the count of the variant
+     * {@code chars[start, end)} of {@code node}, adding the variant if it is
+     * new.
+     *
+     * @param node
+     *            the node the word's folded path ends at
+     * @param chars
+     *            the buffer holding the word
+     * @param start
+     *            the start of the word
+     * @param end
+     *            the end (exclusive) of the word
+     * @param count
+     *            the amount to add
+     */
+    private void addVariant(int node, char[] chars, int start, int end,
+            int count) {
+        int length = end - start;
+        int v = this.firstVariant[node];
+        while (v != NONE
+                && !equals(this.variantWords[v], chars, start, length)) {
+            v = this.nextVariant[v];
+        }
+        if (v == NONE) {
+            if (this.variants == this.variantWords.length) {
+                int capacity = this.variants * 2;
+                this.variantWords = Arrays.copyOf(this.variantWords,
+                        capacity);
+                this.variantCounts = Arrays.copyOf(this.variantCounts,
+                        capacity);
+                this.nextVariant = Arrays.copyOf(this.nextVariant, capacity);
+            }
+            v = this.variants;
+            this.variantWords[v] = new String(chars, start, length);
+            this.variantCounts[v] = 0;
+            this.nextVariant[v] = this.firstVariant[node];
+            this.firstVariant[node] = v;
+            this.variants++;
+            this.size++;
+        }
+        this.variantCounts[v] += count;
+    }
+
+    /**
+     * Adds {@code count} to the count of {@code chars[start, end)}, adding the
+     * word if it is new. A {@code String} is only made for a new word that is
+     * not in lower case.
+     *
+     * @param chars
+     *            the buffer holding the word
+     * @param start
+     *            the start of the word
+     * @param end
+     *            the end (exclusive) of the word
+     * @param count
+     *            the amount to add
+     * @updates this
+     * @requires 0 <= start < end <= |chars|
+     */
+    public void add(char[] chars, int start, int end, int count) {
+        assert chars != null : "Violation of: chars is not null";
+        assert 0 <= start && start < end && end <= chars.length
+                : "Violation of: 0 <= start < end <= |chars|";
+        int node = ROOT;
+        boolean lowerCase = true;
+        for (int i = start; i < end; i++) {
+            char folded = Character.toLowerCase(chars[i]);
+            lowerCase &= folded == chars[i];
+            node = this.child(node, folded);
+        }
+        if (!lowerCase) {
+            this.addVariant(node, chars, start, end, count);
+        } else {
+            if (this.counts[node] == 0) {
+                this.size++;
+            }
+            this.counts[node] += count;
+        }
+    }
+
+    /**
+     * Adds 1 to the count of {@code chars[start, end)}, adding the word if it
+     * is new.
+     *
+     * @param chars
+     *            the buffer holding the word
+     * @param start
+     *            the start of the word
+     * @param end
+     *            the end (exclusive) of the word
+     * @updates this
+     * @requires 0 <= start < end <= |chars|
+     */
+    public void increment(char[] chars, int start, int end) {
+        this.add(chars, start, end, 1);
+    }
+
+    /**
+     * Adds {@code count} to the count of {@code word}, adding it if it is
+     * new.
+     *
+     * @param word
+     *            the word
+     * @param count
+     *            the amount to add
+     * @updates this
+     * @requires |word| > 0 and count > 0
+     */
+    public void add(String word, int count) {
+        assert word != null : "Violation of: word is not null";
+        char[] chars = word.toCharArray();
+        this.add(chars, 0, chars.length, count);
+    }
+
+    /**
+     * Returns the number of distinct words.
+     *
+     * @return the number of distinct words
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Passes the words ending at {@code node}, whose folded path is
+     * {@code path[0, length)}, to {@code action}, in {@code String.compareTo}
+     * order.
+     *
+     * @param node
+     *            the node
+     * @param path
+     *            the folded characters of the path to the node
+     * @param length
+     *            the length of the path
+     * @param action
+     *            the receiver of the words and counts
+     */
+    private void emit(int node, char[] path, int length,
+            ObjIntConsumer<String> action) {
+        int v = this.firstVariant[node];
+        if (v == NONE) {
+            if (this.counts[node] > 0) {
+                action.accept(new String(path, 0, length), this.counts[node]);
+            }
+        } else {
+            int n = 0;
+            for (int w = v; w != NONE; w = this.nextVariant[w]) {
+                n++;
+            }
+            String[] words = new String[n + 1];
+            int[] wordCounts = new int[n + 1];
+            n = 0;
+            if (this.counts[node] > 0) {
+                words[n] = new String(path, 0, length);
+                wordCounts[n] = this.counts[node];
+                n++;
+            }
+            for (int w = v; w != NONE; w = this.nextVariant[w]) {
+                words[n] = this.variantWords[w];
+                wordCounts[n] = this.variantCounts[w];
+                n++;
+            }
+            /*
+             * Insertion sort: only the case variants of one word are sorted.
+             */
+            for (int i = 1; i < n; i++) {
+                String word = words[i];
+                int count = wordCounts[i];
+                int j = i;
+                while (j > 0 && words[j - 1].compareTo(word) > 0) {
+                    words[j] = words[j - 1];
+                    wordCounts[j] = wordCounts[j - 1];
+                    j--;
+                }
+                words[j] = word;
+                wordCounts[j] = count;
+            }
+            for (int i = 0; i < n; i++) {
+                action.accept(words[i], wordCounts[i]);
+            }
+        }
+    }
+
+    /**
+     * Passes every word and its count to {@code action} in case-insensitive
+     * alphabetical order, and words that fold to the same characters in
+     * {@code String.compareTo} order.
+     *
+     * @param action
+     *            the receiver of the words and counts
+     */
+    public void forEach(ObjIntConsumer<String> action) {
+        assert action != null : "Violation of: action is not null";
+        char[] path = new char[INITIAL_NODES];
+        int[] parents = new int[INITIAL_NODES];
+        int depth = 0;
+        int node = this.firstChild[ROOT];
+        while (node != NONE) {
+            if (depth == path.length) {
+                path = Arrays.copyOf(path, depth * 2);
+                parents = Arrays.copyOf(parents, depth * 2);
+            }
+            path[depth] = this.labels[node];
+            this.emit(node, path, depth + 1, action);
+            if (this.firstChild[node] != NONE) {
+                parents[depth] = node;
+                depth++;
+                node = this.firstChild[node];
+            } else {
+                while (this.nextSibling[node] == NONE && depth > 0) {
+                    depth--;
+                    node = parents[depth];
+                }
+                node = this.nextSibling[node];
+            }
+        }
+    }
+
+}